@@ -0,0 +1,129 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.cmdline.parser.ParserTool;
+import opennlp.tools.parser.Parse;
+import opennlp.tools.parser.Parser;
+import opennlp.tools.parser.ParserFactory;
+import opennlp.tools.parser.ParserModel;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fixed fixtures shared by the benchmarks: the sentences of {@code src/test/resources/test-text/sentences.txt}, their
+ * parse trees and seeded random embeddings for all of their tags and words.
+ * <p>
+ * Sentences are parsed once, with the parser model used by {@link Parse2Vec}, into a {@link ParseTreeStore} under
+ * {@code target/} which is reused as long as the sentences and the parser model do not change, so that all the runs
+ * measure the very same trees. Paths are relative to the project root and can be changed with
+ * {@code -Dparse2vec.sentences=...} and {@code -Dparse2vec.parserModel=...}.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkFixtures {
+
+    static final int LAYER_SIZE = 100;
+
+    private static final String SENTENCES = System.getProperty("parse2vec.sentences",
+            "src/test/resources/test-text/sentences.txt");
+    private static final String PARSER_MODEL = System.getProperty("parse2vec.parserModel",
+            "src/main/resources/en-parser-chunking.bin");
+    private static final String TREES = "target/benchmark-trees.bin";
+
+    List<String> sentences;
+    List<Parse[]> parses;
+    LuceneTokenizerFactory tokenizerFactory;
+    MappedWordVectorTable wordVectors;
+    DenseWordVectorTable ptEmbeddings;
+    DenseWordVectorTable parsePathWordEmbeddings;
+
+    @Setup
+    public void setup() throws Exception {
+        tokenizerFactory = new LuceneTokenizerFactory(AnalysisUtils.simpleAnalyzer());
+        loadParses();
+
+        Random random = new Random(42);
+        ptEmbeddings = new DenseWordVectorTable(LAYER_SIZE);
+        parsePathWordEmbeddings = new DenseWordVectorTable(LAYER_SIZE);
+        for (Parse[] topParses : parses) {
+            for (Parse topParse : topParses) {
+                addRandomVectors(topParse, random);
+            }
+        }
+
+        // the word vectors are memory mapped, as when they are loaded with -Dparse2vec.wordVectors=...
+        BinaryEmbeddings.writeEmbeddingsAsBinary(parsePathWordEmbeddings, "target/benchmark-words");
+        wordVectors = BinaryEmbeddings.open(Paths.get("target/benchmark-words-vectors.bin"));
+    }
+
+    private void loadParses() throws IOException {
+        File sentencesFile = new File(SENTENCES);
+        File parserModelFile = new File(PARSER_MODEL);
+        sentences = new ArrayList<>();
+        for (String line : Files.readAllLines(sentencesFile.toPath(), StandardCharsets.UTF_8)) {
+            if (line.trim().length() > 0) {
+                sentences.add(line);
+            }
+        }
+        ParseTreeStore store = new ParseTreeStore(new File(TREES));
+        String fingerprint = ParseTreeStore.fingerprint(Collections.singletonList(sentencesFile), parserModelFile);
+        if (!store.isValid(fingerprint)) {
+            if (!parserModelFile.exists()) {
+                throw new IOException("cannot find parser model " + parserModelFile.getAbsolutePath()
+                        + ", set -Dparse2vec.parserModel=...");
+            }
+            ParserModel model;
+            try (InputStream stream = new FileInputStream(parserModelFile)) {
+                model = new ParserModel(stream);
+            }
+            Parser parser = ParserFactory.create(model);
+            new File(TREES).getAbsoluteFile().getParentFile().mkdirs();
+            try (ParseTreeStore.Writer writer = store.writer(fingerprint)) {
+                for (String sentence : sentences) {
+                    writer.add(sentence, ParserTool.parseLine(sentence, parser, 1));
+                }
+                writer.commit();
+            }
+        }
+        parses = new ArrayList<>();
+        try (ParseTreeStore.Reader reader = store.reader()) {
+            while (reader.hasNext()) {
+                parses.add(reader.next().getParses());
+            }
+        }
+    }
+
+    private void addRandomVectors(Parse parse, Random random) {
+        if (ptEmbeddings.row(parse.getType()) < 0) {
+            ptEmbeddings.put(parse.getType(), randomVector(random));
+        }
+        if (parse.getChildCount() == 0) {
+            String word = tokenizerFactory.normalize(parse.getCoveredText());
+            if (parsePathWordEmbeddings.row(word) < 0) {
+                parsePathWordEmbeddings.put(word, randomVector(random));
+            }
+        }
+        for (Parse child : parse.getChildren()) {
+            addRandomVectors(child, random);
+        }
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[LAYER_SIZE];
+        for (int i = 0; i < LAYER_SIZE; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.tteofili.parse2vec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the SSV / TSV writers over a table of seeded random vectors, written under {@code target/}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmbeddingsWriterBenchmark {
+
+    private static final int THREADS = Integer.getInteger("parse2vec.threads", Runtime.getRuntime().availableProcessors());
+
+    @Param({"10000"})
+    public int rows;
+
+    private DenseWordVectorTable table;
+    private String prefix;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        table = new DenseWordVectorTable(BenchmarkFixtures.LAYER_SIZE);
+        for (int row = 0; row < rows; row++) {
+            float[] vector = new float[BenchmarkFixtures.LAYER_SIZE];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+            table.put("token-" + row, vector);
+        }
+        File dir = new File("target/benchmark-embeddings");
+        dir.mkdirs();
+        prefix = new File(dir, "table").getPath();
+        executor = Parse2Vec.newExecutor(THREADS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void ssv() throws IOException {
+        EmbeddingsUtils.writeEmbeddingsAsSSV(table, prefix, 3);
+    }
+
+    @Benchmark
+    public void tsv() throws IOException {
+        EmbeddingsUtils.writeEmbeddingsAsTSV(table, prefix, 1);
+    }
+
+    @Benchmark
+    public void parallelSSVAndTSV() throws IOException {
+        EmbeddingsExporter.writeEmbeddings(table, prefix, 3, 1, executor, THREADS);
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.parser.Parse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the embedding passes over the parse trees of the fixture sentences, each invocation processes all of
+ * them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Parse2VecUtilsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SentenceVectorMethod {
+
+        @Param({"CLUSTER", "SUM"})
+        public Parse2Vec.Method method;
+    }
+
+    @Benchmark
+    public VectorAccumulator ptEmbeddingsFromSentence(BenchmarkFixtures fixtures) {
+        VectorAccumulator ptEmbeddings = new VectorAccumulator(BenchmarkFixtures.LAYER_SIZE);
+        for (Parse[] topParses : fixtures.parses) {
+            Parse2VecUtils.getPTEmbeddingsFromSentence(fixtures.wordVectors, topParses, ptEmbeddings,
+                    fixtures.tokenizerFactory);
+        }
+        return ptEmbeddings;
+    }
+
+    @Benchmark
+    public PathWordAccumulator ptPathTags(BenchmarkFixtures fixtures) {
+        PathWordAccumulator pathWords = new PathWordAccumulator(BenchmarkFixtures.LAYER_SIZE);
+        for (Parse[] topParses : fixtures.parses) {
+            Parse2VecUtils.getPTPathTags(fixtures.wordVectors, topParses, pathWords, fixtures.tokenizerFactory);
+        }
+        return pathWords;
+    }
+
+    @Benchmark
+    public void sentenceVector(BenchmarkFixtures fixtures, SentenceVectorMethod sentenceVectorMethod, Blackhole blackhole) {
+        for (Parse[] topParses : fixtures.parses) {
+            blackhole.consume(Parse2VecUtils.getPTPathSentenceVector(topParses, fixtures.ptEmbeddings,
+                    fixtures.parsePathWordEmbeddings, 3, sentenceVectorMethod.method, BenchmarkFixtures.LAYER_SIZE, fixtures.tokenizerFactory));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.tteofili.parse2vec;
+
+import org.deeplearning4j.text.tokenization.tokenizer.Tokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link LuceneTokenizerFactory}: tokenizing the fixture sentences and normalizing the single words the
+ * embedding passes look up for each leaf of the parse trees, through a tokenizer and through the cached
+ * {@link LuceneTokenizerFactory#normalize(String)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    @Benchmark
+    public void sentences(BenchmarkFixtures fixtures, Blackhole blackhole) {
+        for (String sentence : fixtures.sentences) {
+            Tokenizer tokenizer = fixtures.tokenizerFactory.create(sentence);
+            while (tokenizer.hasMoreTokens()) {
+                blackhole.consume(tokenizer.nextToken());
+            }
+        }
+    }
+
+    @Benchmark
+    public void words(BenchmarkFixtures fixtures, Blackhole blackhole) {
+        for (String sentence : fixtures.sentences) {
+            for (String word : sentence.split(" ")) {
+                Tokenizer tokenizer = fixtures.tokenizerFactory.create(word);
+                blackhole.consume(tokenizer.hasMoreTokens() ? tokenizer.nextToken() : word);
+            }
+        }
+    }
+
+    @Benchmark
+    public void normalizedWords(BenchmarkFixtures fixtures, Blackhole blackhole) {
+        for (String sentence : fixtures.sentences) {
+            for (String word : sentence.split(" ")) {
+                blackhole.consume(fixtures.tokenizerFactory.normalize(word));
+            }
+        }
+    }
+}
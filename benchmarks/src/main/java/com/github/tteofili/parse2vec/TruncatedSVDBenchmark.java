@@ -0,0 +1,62 @@
+package com.github.tteofili.parse2vec;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the truncated SVD of the children vectors of a parse tree node, with the commons-math SVD of
+ * {@link EmbeddingsUtils} and with the Gram matrix based one of {@link TruncatedSVD}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TruncatedSVDBenchmark {
+
+    @Param({"2", "4", "8"})
+    public int children;
+
+    @Param({"1", "3"})
+    public int k;
+
+    private float[][] matrix;
+    private INDArray indArray;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        matrix = new float[children][BenchmarkFixtures.LAYER_SIZE];
+        for (float[] row : matrix) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = (float) random.nextGaussian();
+            }
+        }
+        indArray = Nd4j.create(matrix);
+    }
+
+    @Benchmark
+    public double[][] embeddingsUtils() {
+        return EmbeddingsUtils.getTruncatedVT(indArray, Math.min(k, children));
+    }
+
+    @Benchmark
+    public float[][] truncatedSVD() {
+        return TruncatedSVD.getTruncatedVT(matrix, Math.min(k, children));
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.tteofili.parse2vec;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sink handing rows over to a dedicated thread, which adds them to another (e.g. file writing) sink, so that formatting
+ * and I/O overlap with the computation of the next rows.
+ * <p>
+ * Rows wait in a bounded queue: when the writer falls behind, adding a row blocks until there is room again, so that
+ * at most {@code capacity} rows are held in memory. Failures of the writer thread are rethrown by the next call to
+ * {@link #add(String, float[])} or {@link #close()}.
+ */
+class AsyncEmbeddingsSink implements EmbeddingsSink {
+
+    private static final Row END = new Row(null, null);
+
+    private final EmbeddingsSink sink;
+    private final BlockingQueue<Row> queue;
+    private final Thread writer;
+    private volatile Throwable failure;
+    private boolean closed = false;
+
+    /**
+     * @param sink     the sink the rows are added to, by the writer thread only
+     * @param capacity the maximum number of rows waiting to be written
+     */
+    AsyncEmbeddingsSink(EmbeddingsSink sink, int capacity) {
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::write, "parse2vec-sink-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void write() {
+        try {
+            for (Row row = queue.take(); row != END; row = queue.take()) {
+                sink.add(row.token, row.vector);
+            }
+        } catch (Throwable t) {
+            failure = t;
+            // producers blocked on a full queue notice the failure as soon as their offer times out
+            queue.clear();
+        }
+    }
+
+    @Override
+    public void add(String token, float[] vector) throws IOException {
+        if (closed) {
+            throw new IOException(this + " is closed");
+        }
+        put(new Row(token, vector));
+    }
+
+    private void put(Row row) throws IOException {
+        try {
+            do {
+                checkFailure();
+            } while (!queue.offer(row, 100, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while writing to " + sink);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t != null) {
+            throw new IOException("cannot write to " + sink, t);
+        }
+    }
+
+    /**
+     * wait for all the rows to be written, then close the underlying sink
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while writing to " + sink);
+        } finally {
+            sink.close();
+        }
+        checkFailure();
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncEmbeddingsSink{" + sink + '}';
+    }
+
+    private static class Row {
+
+        private final String token;
+        private final float[] vector;
+
+        Row(String token, float[] vector) {
+            this.token = token;
+            this.vector = vector;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVector;
+import opennlp.tools.util.wordvector.WordVectorTable;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Binary, memory mappable, format for embedding tables.
+ * <p>
+ * All values are little endian. A file is made of:
+ * <ul>
+ * <li>a 64 bytes header: magic, version, dimension, hash capacity (ints), rows count, matrix offset, token offsets
+ * offset, tokens offset, hash offset (longs)</li>
+ * <li>the row major {@code rows x dimension} float matrix</li>
+ * <li>{@code rows + 1} long offsets of each token within the tokens section</li>
+ * <li>the UTF-8 bytes of all the tokens</li>
+ * <li>an open addressing (linear probing) hash table of {@code int} rows ({@code -1} for empty slots), indexed by
+ * the spread {@link String#hashCode()} of the tokens</li>
+ * </ul>
+ * The matrix comes first so that rows can be streamed to disk as soon as they are computed, while the dictionary and
+ * the hash table are appended (and the header is finalized) when the writer is closed.
+ */
+class BinaryEmbeddings {
+
+    static final int MAGIC = 0x50325642;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    static void writeEmbeddingsAsBinary(WordVectorTable wordVectorTable, String prefix) throws IOException {
+        try (Writer writer = new Writer(Paths.get(prefix + "-vectors.bin"), wordVectorTable.dimension())) {
+            Iterator<String> tokens = wordVectorTable.tokens();
+            while (tokens.hasNext()) {
+                String token = tokens.next();
+                writer.add(token, wordVectorTable.get(token));
+            }
+        }
+    }
+
+    /**
+     * open a writer adding rows to an existing binary embeddings file (if any): the existing rows are copied to a new
+     * file, which replaces the existing one once the writer is closed
+     *
+     * @param prefix    the prefix of the binary embeddings file
+     * @param dimension the dimension of the rows to add
+     * @return the writer, holding the existing rows
+     * @throws IOException if the existing file cannot be read or has a different dimension
+     */
+    static Writer appender(String prefix, int dimension) throws IOException {
+        Path path = Paths.get(prefix + "-vectors.bin");
+        if (!Files.exists(path)) {
+            return new Writer(path, dimension);
+        }
+        MappedWordVectorTable existing = open(path);
+        if (existing.dimension() != dimension) {
+            throw new IOException("cannot add vectors of dimension " + dimension + " to " + path + " of dimension "
+                    + existing.dimension());
+        }
+        Writer writer = new Writer(Paths.get(path.toString() + ".tmp"), dimension, path, existing);
+        for (int row = 0; row < existing.size(); row++) {
+            writer.add(existing.token(row), existing.vector(row));
+        }
+        return writer;
+    }
+
+    /**
+     * open a binary embeddings file, mapping it into memory
+     *
+     * @param path the path of the file
+     * @return a table whose vectors are read directly from the mapped file
+     * @throws IOException if the file cannot be read or is not valid
+     */
+    static MappedWordVectorTable open(Path path) throws IOException {
+        return new MappedWordVectorTable(path);
+    }
+
+    /**
+     * @param path the path of a file
+     * @return whether the file starts with the magic number of the binary embeddings format
+     * @throws IOException if the file cannot be read
+     */
+    static boolean isBinaryEmbeddings(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) {
+                    return false;
+                }
+            }
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+
+    static int hash(String token) {
+        int h = token.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    static int hashCapacity(int rows) {
+        return Integer.highestOneBit(Math.max(rows * 2, 2) - 1) << 1;
+    }
+
+    /**
+     * streams rows to a binary embeddings file; the vectors go straight to disk, only 12 bytes per row (token hash
+     * and offset) are kept in memory until the writer is closed
+     */
+    static class Writer implements EmbeddingsSink {
+
+        private final Path path;
+        private final Path target;
+        private final MappedWordVectorTable existing;
+        private final Path tokensPath;
+        private final int dimension;
+        private final FileChannel channel;
+        private final OutputStream tokensStream;
+        private final ByteBuffer buffer;
+        private int rows = 0;
+        private long tokensLength = 0;
+        private long[] offsets = new long[1024];
+        private int[] hashes = new int[1024];
+
+        Writer(Path path, int dimension) throws IOException {
+            this(path, dimension, null, null);
+        }
+
+        private Writer(Path path, int dimension, Path target, MappedWordVectorTable existing) throws IOException {
+            this.path = path;
+            this.target = target;
+            this.existing = existing;
+            this.dimension = dimension;
+            this.tokensPath = Paths.get(path.toString() + ".tokens.tmp");
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.tokensStream = new BufferedOutputStream(Files.newOutputStream(tokensPath), 1 << 16);
+            this.buffer = ByteBuffer.allocateDirect(Math.max(1 << 16, dimension * 4)).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(HEADER_SIZE);
+        }
+
+        void add(String token, WordVector vector) throws IOException {
+            assert vector.dimension() == dimension : "wrong size " + vector.dimension() + " of vector for " + token;
+            ensureRoom();
+            for (int i = 0; i < dimension; i++) {
+                buffer.putFloat(vector.getAsFloat(i));
+            }
+            addToken(token);
+        }
+
+        @Override
+        public void add(String token, float[] vector) throws IOException {
+            assert vector.length == dimension : "wrong size " + vector.length + " of vector for " + token;
+            ensureRoom();
+            for (int i = 0; i < dimension; i++) {
+                buffer.putFloat(vector[i]);
+            }
+            addToken(token);
+        }
+
+        private void ensureRoom() throws IOException {
+            if (buffer.remaining() < dimension * 4) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void addToken(String token) throws IOException {
+            if (rows == Integer.MAX_VALUE - 8) {
+                throw new IOException("cannot write more than " + rows + " rows");
+            }
+            if (rows + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            }
+            byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+            tokensStream.write(bytes);
+            offsets[rows] = tokensLength;
+            hashes[rows] = hash(token);
+            tokensLength += bytes.length;
+            rows++;
+        }
+
+        int rows() {
+            return rows;
+        }
+
+        /**
+         * @return whether the given token is one of the existing rows this writer appends to
+         */
+        boolean contains(String token) {
+            return existing != null && existing.row(token) >= 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                tokensStream.close();
+                offsets[rows] = tokensLength;
+
+                long offsetsOffset = HEADER_SIZE + (long) rows * dimension * 4;
+                channel.position(offsetsOffset);
+                for (int row = 0; row <= rows; row++) {
+                    if (buffer.remaining() < 8) {
+                        flush();
+                    }
+                    buffer.putLong(offsets[row]);
+                }
+                flush();
+
+                long tokensOffset = channel.position();
+                try (FileChannel tokensChannel = FileChannel.open(tokensPath, StandardOpenOption.READ)) {
+                    long transferred = 0;
+                    while (transferred < tokensLength) {
+                        transferred += tokensChannel.transferTo(transferred, tokensLength - transferred, channel);
+                    }
+                }
+                channel.position(tokensOffset + tokensLength);
+
+                long hashOffset = channel.position();
+                int capacity = hashCapacity(rows);
+                int[] slots = new int[capacity];
+                Arrays.fill(slots, -1);
+                int mask = capacity - 1;
+                for (int row = 0; row < rows; row++) {
+                    int slot = hashes[row] & mask;
+                    while (slots[slot] >= 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    slots[slot] = row;
+                }
+                for (int slot : slots) {
+                    if (buffer.remaining() < 4) {
+                        flush();
+                    }
+                    buffer.putInt(slot);
+                }
+                flush();
+
+                buffer.putInt(MAGIC);
+                buffer.putInt(VERSION);
+                buffer.putInt(dimension);
+                buffer.putInt(capacity);
+                buffer.putLong(rows);
+                buffer.putLong(HEADER_SIZE);
+                buffer.putLong(offsetsOffset);
+                buffer.putLong(tokensOffset);
+                buffer.putLong(hashOffset);
+                buffer.putLong(0);
+                buffer.flip();
+                long position = 0;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                buffer.clear();
+            } finally {
+                channel.close();
+                tokensStream.close();
+                Files.deleteIfExists(tokensPath);
+            }
+            if (target != null) {
+                Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "BinaryEmbeddings.Writer{" + path + '}';
+        }
+    }
+}
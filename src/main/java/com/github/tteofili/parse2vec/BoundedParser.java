@@ -0,0 +1,202 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.chunker.ChunkerME;
+import opennlp.tools.parser.AbstractBottomUpParser;
+import opennlp.tools.parser.Parse;
+import opennlp.tools.parser.Parser;
+import opennlp.tools.parser.ParserModel;
+import opennlp.tools.parser.ParserType;
+import opennlp.tools.postag.POSTaggerME;
+import opennlp.tools.util.Span;
+
+/**
+ * {@link Parser} which bounds the cost of parsing a sentence, as a few very long (or garbage) sentences can otherwise
+ * take seconds each to parse and dominate a run.
+ * <p>
+ * Sentences with more than {@code maxTokens} tokens are not fully parsed, and neither are the ones whose parsing takes
+ * longer than {@code timeoutNanos}: the search of the full parser checks its deadline at every step and gives up
+ * once it has expired. Both get a shallow tree, made of the chunks and of the POS tags the models of the parser
+ * assign to their tokens, in linear time, so that they still get embedded: a {@code TOP} node whose children are the
+ * chunks (e.g. {@code NP}, {@code VP}), whose children are POS tags, with the tokens (and the tags outside any chunk)
+ * below them. Sentences with more than {@code maxFallbackTokens} tokens are skipped.
+ * <p>
+ * The outcome of the last sentence parsed is kept for the caller, so instances are not thread safe.
+ */
+class BoundedParser implements Parser {
+
+    /**
+     * how the last sentence has been parsed
+     */
+    enum Outcome {
+        /**
+         * fully parsed
+         */
+        PARSED,
+        /**
+         * shallow tree, as it has more than {@code maxTokens} tokens
+         */
+        TOO_LONG,
+        /**
+         * shallow tree, as parsing took longer than the timeout
+         */
+        TIMED_OUT,
+        /**
+         * not parsed at all, as it has more than {@code maxFallbackTokens} tokens
+         */
+        SKIPPED
+    }
+
+    /**
+     * the default maximum number of tokens of fully parsed sentences
+     */
+    static final int MAX_TOKENS = Integer.getInteger("parse2vec.parse.maxTokens", 100);
+
+    /**
+     * the default maximum time spent fully parsing a sentence
+     */
+    static final long TIMEOUT_NANOS = Long.getLong("parse2vec.parse.timeoutMillis", 5000) * 1000000;
+
+    /**
+     * the default maximum number of tokens of the sentences parsed at all
+     */
+    static final int MAX_FALLBACK_TOKENS = Integer.getInteger("parse2vec.parse.maxFallbackTokens", 1000);
+
+    private final AbstractBottomUpParser parser;
+    private final POSTaggerME tagger;
+    private final ChunkerME chunker;
+    private final int maxTokens;
+    private final long timeoutNanos;
+    private final int maxFallbackTokens;
+    private long deadline;
+    private Outcome outcome;
+
+    /**
+     * @param model             the parser model
+     * @param maxTokens         the maximum number of tokens of fully parsed sentences
+     * @param timeoutNanos      the maximum time spent fully parsing a sentence, {@code 0} for no limit
+     * @param maxFallbackTokens the maximum number of tokens of the sentences parsed at all
+     */
+    BoundedParser(ParserModel model, int maxTokens, long timeoutNanos, int maxFallbackTokens) {
+        this.parser = model.getParserType() == ParserType.TREEINSERT ? new opennlp.tools.parser.treeinsert.Parser(model) {
+            @Override
+            protected Parse[] advanceParses(Parse p, double probMass) {
+                checkDeadline();
+                return super.advanceParses(p, probMass);
+            }
+        } : new opennlp.tools.parser.chunking.Parser(model) {
+            @Override
+            protected Parse[] advanceParses(Parse p, double probMass) {
+                checkDeadline();
+                return super.advanceParses(p, probMass);
+            }
+        };
+        this.tagger = new POSTaggerME(model.getParserTaggerModel());
+        this.chunker = new ChunkerME(model.getParserChunkerModel());
+        this.maxTokens = maxTokens;
+        this.timeoutNanos = timeoutNanos;
+        this.maxFallbackTokens = maxFallbackTokens;
+    }
+
+    @Override
+    public Parse[] parse(Parse tokens, int numParses) {
+        int length = tokens.getChildCount();
+        if (length > maxFallbackTokens) {
+            outcome = Outcome.SKIPPED;
+            return new Parse[0];
+        }
+        if (length > maxTokens) {
+            outcome = Outcome.TOO_LONG;
+            return new Parse[]{shallowParse(tokens)};
+        }
+        deadline = timeoutNanos > 0 ? System.nanoTime() + timeoutNanos : 0;
+        try {
+            Parse[] parses = parser.parse(tokens, numParses);
+            outcome = Outcome.PARSED;
+            return parses;
+        } catch (TimeoutException e) {
+            outcome = Outcome.TIMED_OUT;
+            return new Parse[]{shallowParse(tokens)};
+        }
+    }
+
+    @Override
+    public Parse parse(Parse tokens) {
+        if (tokens.getChildCount() == 0) {
+            outcome = Outcome.PARSED;
+            return tokens;
+        }
+        Parse[] parses = parse(tokens, 1);
+        if (parses.length == 0) {
+            return null;
+        }
+        AbstractBottomUpParser.setParents(parses[0]);
+        return parses[0];
+    }
+
+    /**
+     * @return how the last sentence has been parsed
+     */
+    Outcome getOutcome() {
+        return outcome;
+    }
+
+    private void checkDeadline() {
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new TimeoutException();
+        }
+    }
+
+    /**
+     * @param tokens the {@code INC} node holding the tokens of a sentence, as built by {@code ParserTool}
+     * @return the tree of the chunks and POS tags of the tokens
+     */
+    Parse shallowParse(Parse tokens) {
+        Parse[] tokenNodes = tokens.getChildren();
+        String[] words = new String[tokenNodes.length];
+        for (int i = 0; i < tokenNodes.length; i++) {
+            words[i] = tokenNodes[i].getCoveredText();
+        }
+        String[] tags = tagger.tag(words);
+        String[] chunks = chunker.chunk(words, tags);
+
+        String text = tokens.getText();
+        Parse top = new Parse(text, tokens.getSpan(), AbstractBottomUpParser.TOP_NODE, 1, 0);
+        for (int start = 0, end; start < tokenNodes.length; start = end) {
+            // a chunk is a START tag followed by the CONT tags of the same type, anything else stands alone
+            String type = chunks[start].startsWith(AbstractBottomUpParser.START)
+                    ? chunks[start].substring(AbstractBottomUpParser.START.length()) : null;
+            end = start + 1;
+            while (type != null && end < tokenNodes.length
+                    && chunks[end].equals(AbstractBottomUpParser.CONT + type)) {
+                end++;
+            }
+            Parse parent = top;
+            if (type != null) {
+                parent = new Parse(text, new Span(tokenNodes[start].getSpan().getStart(),
+                        tokenNodes[end - 1].getSpan().getEnd()), type, 1, end - 1);
+            }
+            for (int i = start; i < end; i++) {
+                Span span = tokenNodes[i].getSpan();
+                Parse tag = new Parse(text, span, tags[i], 1, i);
+                tag.insert(new Parse(text, span, AbstractBottomUpParser.TOK_NODE, 0, i));
+                parent.insert(tag);
+            }
+            if (parent != top) {
+                top.insert(parent);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * thrown, without a stack trace, to abort the search of the full parser
+     */
+    private static class TimeoutException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        TimeoutException() {
+            super("parse timed out", null, false, false);
+        }
+    }
+}
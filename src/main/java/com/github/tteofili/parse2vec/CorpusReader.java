@@ -0,0 +1,214 @@
+package com.github.tteofili.parse2vec;
+
+import org.deeplearning4j.text.sentenceiterator.BaseSentenceIterator;
+import org.deeplearning4j.text.sentenceiterator.SentenceIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming source of the lines of a corpus, being either a single text file or a directory, which is visited
+ * recursively skipping hidden files and directories. Files ending with {@code .gz} are transparently decompressed.
+ * <p>
+ * Lines are read one at a time with an explicit {@link Charset}, so memory usage does not depend on file sizes, and
+ * each file is closed as soon as it has been consumed (or when the iteration is closed).
+ */
+class CorpusReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(CorpusReader.class);
+
+    private final List<File> files;
+    private final Charset charset;
+
+    CorpusReader(File root, Charset charset) {
+        this.charset = charset;
+        List<File> files = new ArrayList<>();
+        collect(root, files);
+        this.files = Collections.unmodifiableList(files);
+    }
+
+    /**
+     * @param files   the files of the corpus, in reading order
+     * @param charset the charset of the files
+     */
+    CorpusReader(List<File> files, Charset charset) {
+        this.charset = charset;
+        this.files = Collections.unmodifiableList(new ArrayList<>(files));
+    }
+
+    private static void collect(File file, List<File> files) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    if (!child.getName().startsWith(".")) {
+                        collect(child, files);
+                    }
+                }
+            }
+        } else if (file.isFile()) {
+            files.add(file);
+        }
+    }
+
+    List<File> getFiles() {
+        return files;
+    }
+
+    /**
+     * iterate over all the lines of the corpus
+     *
+     * @return a closeable iterator over the lines
+     */
+    Lines lines() {
+        return new Lines(files.iterator());
+    }
+
+    /**
+     * DL4J {@link SentenceIterator} over the lines of the corpus, to be used as word2vec input
+     *
+     * @return a resettable sentence iterator
+     */
+    SentenceIterator sentenceIterator() {
+        return new CorpusSentenceIterator();
+    }
+
+    static BufferedReader open(File file, Charset charset) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            if (file.getName().endsWith(".gz")) {
+                inputStream = new GZIPInputStream(inputStream, 1 << 16);
+            }
+            return new BufferedReader(new InputStreamReader(inputStream, charset), 1 << 16);
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * the lines of a sequence of files, opened lazily one after the other
+     */
+    class Lines implements Iterator<String>, Closeable {
+
+        private final Iterator<File> fileIterator;
+        private BufferedReader reader;
+        private File file;
+        private long lineNumber;
+        private String next;
+        private File lastFile;
+        private long lastLineNumber;
+
+        private Lines(Iterator<File> fileIterator) {
+            this.fileIterator = fileIterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (next == null) {
+                    if (reader == null) {
+                        if (!fileIterator.hasNext()) {
+                            return false;
+                        }
+                        file = fileIterator.next();
+                        lineNumber = 0;
+                        logger.info("processing file {}", file);
+                        reader = open(file, charset);
+                    }
+                    next = reader.readLine();
+                    lineNumber++;
+                    if (next == null) {
+                        reader.close();
+                        reader = null;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String line = next;
+            next = null;
+            lastFile = file;
+            lastLineNumber = lineNumber;
+            return line;
+        }
+
+        /**
+         * @return the file of the line last returned by {@link #next()}
+         */
+        File getFile() {
+            return lastFile;
+        }
+
+        /**
+         * @return the number, starting from 1, of the line last returned by {@link #next()} within its file
+         */
+        long getLineNumber() {
+            return lastLineNumber;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (reader != null) {
+                reader.close();
+                reader = null;
+            }
+        }
+    }
+
+    private class CorpusSentenceIterator extends BaseSentenceIterator {
+
+        private Lines lines = lines();
+
+        @Override
+        public String nextSentence() {
+            String line = lines.next();
+            return preProcessor != null ? preProcessor.preProcess(line) : line;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return lines.hasNext();
+        }
+
+        @Override
+        public void reset() {
+            finish();
+            lines = lines();
+        }
+
+        @Override
+        public void finish() {
+            try {
+                lines.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
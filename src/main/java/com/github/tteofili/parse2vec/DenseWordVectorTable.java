@@ -0,0 +1,246 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVector;
+import opennlp.tools.util.wordvector.WordVectorTable;
+import opennlp.tools.util.wordvector.WordVectorType;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link WordVectorTable} storing all the vectors, row after row, in a single contiguous {@code float[]}, with an
+ * open addressing (linear probing) index from tokens to rows.
+ * <p>
+ * Vectors returned by {@link #get(String)} are views over the underlying array, not copies; they reflect subsequent
+ * updates of their row as long as the table does not grow.
+ * Rows are kept in insertion order, so that they can be efficiently iterated by position.
+ * Writes are synchronized, reads are not safe while the table is being written.
+ */
+class DenseWordVectorTable implements WordVectorTable {
+
+  private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+  private final int dimension;
+  private float[] data;
+  private String[] tokens;
+  private int[] slots;
+  private int size;
+
+  DenseWordVectorTable(int dimension) {
+    this(dimension, 16);
+  }
+
+  DenseWordVectorTable(int dimension, int expectedSize) {
+    this.dimension = dimension;
+    int capacity = Math.max(expectedSize, 16);
+    this.data = new float[capacity * dimension];
+    this.tokens = new String[capacity];
+    this.slots = newSlots(capacity * 2);
+  }
+
+  /**
+   * put the given vector in the row for the given token, adding the row if needed
+   *
+   * @param token  the token
+   * @param vector the vector, which is copied
+   * @return the row of the token
+   */
+  synchronized int put(String token, float[] vector) {
+    assert vector.length == dimension : "wrong size " + vector.length + " of vector for " + token;
+    int row = add(token);
+    System.arraycopy(vector, 0, data, row * dimension, dimension);
+    return row;
+  }
+
+  /**
+   * get the row for the given token, adding a zero filled row if needed
+   *
+   * @param token the token
+   * @return the row of the token
+   */
+  synchronized int add(String token) {
+    int slot = slot(token);
+    int row = slots[slot];
+    if (row < 0) {
+      if (size == tokens.length) {
+        grow();
+        slot = slot(token);
+      }
+      row = size++;
+      tokens[row] = token;
+      slots[slot] = row;
+    }
+    return row;
+  }
+
+  /**
+   * @param token the token
+   * @return the row of the given token, or {@code -1} if the token is not in the table
+   */
+  int row(String token) {
+    return slots[slot(token)];
+  }
+
+  String token(int row) {
+    return tokens[row];
+  }
+
+  /**
+   * @return the underlying array, holding the vector of row {@code r} from index {@code r * dimension()}
+   */
+  float[] data() {
+    return data;
+  }
+
+  /**
+   * @param row a row
+   * @return a view over the vector stored in the given row
+   */
+  WordVector vector(int row) {
+    return new RowVector(data, row * dimension, dimension);
+  }
+
+  /**
+   * scale each row to unit length, in place
+   */
+  synchronized void normalize() {
+    for (int row = 0; row < size; row++) {
+      VectorMath.normalize(data, row * dimension, dimension);
+    }
+  }
+
+  @Override
+  public WordVector get(String token) {
+    int row = row(token);
+    return row >= 0 ? vector(row) : null;
+  }
+
+  @Override
+  public Iterator<String> tokens() {
+    return new Iterator<String>() {
+      private int row = 0;
+
+      @Override
+      public boolean hasNext() {
+        return row < size;
+      }
+
+      @Override
+      public String next() {
+        if (row >= size) {
+          throw new NoSuchElementException();
+        }
+        return tokens[row++];
+      }
+    };
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int dimension() {
+    return dimension;
+  }
+
+  private int slot(String token) {
+    int mask = slots.length - 1;
+    int h = token.hashCode();
+    int slot = (h ^ (h >>> 16)) & mask;
+    int row;
+    while ((row = slots[slot]) >= 0 && !tokens[row].equals(token)) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void grow() {
+    if (tokens.length == MAX_ARRAY_LENGTH || (long) tokens.length * 2 * dimension > MAX_ARRAY_LENGTH) {
+      throw new IllegalStateException("cannot store more than " + tokens.length + " vectors of dimension " + dimension);
+    }
+    int capacity = tokens.length * 2;
+    data = Arrays.copyOf(data, capacity * dimension);
+    tokens = Arrays.copyOf(tokens, capacity);
+    slots = newSlots(capacity * 2);
+    int mask = slots.length - 1;
+    for (int row = 0; row < size; row++) {
+      int h = tokens[row].hashCode();
+      int slot = (h ^ (h >>> 16)) & mask;
+      while (slots[slot] >= 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = row;
+    }
+  }
+
+  private static int[] newSlots(int capacity) {
+    int[] slots = new int[Integer.highestOneBit(capacity - 1) << 1];
+    Arrays.fill(slots, -1);
+    return slots;
+  }
+
+  @Override
+  public String toString() {
+    return "DenseWordVectorTable{" + "dimension=" + dimension + ", size=" + size + '}';
+  }
+
+  /**
+   * a {@link WordVector} view over a portion of a {@code float[]}
+   */
+  static class RowVector implements WordVector {
+
+    private final float[] data;
+    private final int offset;
+    private final int dimension;
+
+    RowVector(float[] data, int offset, int dimension) {
+      this.data = data;
+      this.offset = offset;
+      this.dimension = dimension;
+    }
+
+    @Override
+    public WordVectorType getDataType() {
+      return WordVectorType.FLOAT;
+    }
+
+    @Override
+    public float getAsFloat(int index) {
+      return data[offset + index];
+    }
+
+    @Override
+    public double getAsDouble(int index) {
+      return getAsFloat(index);
+    }
+
+    @Override
+    public FloatBuffer toFloatBuffer() {
+      return FloatBuffer.wrap(data, offset, dimension).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public DoubleBuffer toDoubleBuffer() {
+      double[] doubleVector = new double[dimension];
+      for (int i = 0; i < dimension; i++) {
+        doubleVector[i] = data[offset + i];
+      }
+      return DoubleBuffer.wrap(doubleVector);
+    }
+
+    @Override
+    public int dimension() {
+      return dimension;
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.toString(Arrays.copyOfRange(data, offset, offset + dimension));
+    }
+  }
+}
@@ -0,0 +1,345 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVector;
+import opennlp.tools.util.wordvector.WordVectorTable;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Buffered exporter of embedding tables to the text formats:
+ * <ul>
+ * <li>SSV ({@code <prefix>-vectors.txt}): one line per token, holding the token followed by its vector</li>
+ * <li>TSV ({@code <prefix>-vectors.tsv} and {@code <prefix>-metadata.tsv}): vectors and tokens in separate files, as
+ * expected by the TensorBoard projector</li>
+ * </ul>
+ * Both formats are written in a single pass over the table: rows are split in chunks which are formatted (possibly in
+ * parallel) into reusable byte buffers, without creating intermediate {@link String}s, and then written in order.
+ * Values are rounded to a fixed number of decimals and formatted exactly as {@code String.valueOf(double)} would.
+ * <p>
+ * Rows which are not held in a table can be streamed to the same formats with a {@link Writer}.
+ */
+class EmbeddingsExporter {
+
+    static final int ROWS_PER_CHUNK = 512;
+
+    private static final int MAX_DECIMALS = 8;
+    private static final long[] POWERS_OF_TEN = new long[MAX_DECIMALS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private static final byte TAB = '\t';
+    private static final byte NEW_LINE = '\n';
+
+    /**
+     * write the given table as SSV and / or TSV
+     *
+     * @param wordVectorTable the table to write
+     * @param prefix          the prefix of the output files
+     * @param ssvDecimals     the number of decimals of the SSV values, or a negative number to skip the SSV output
+     * @param tsvDecimals     the number of decimals of the TSV values, or a negative number to skip the TSV output
+     * @param executor        the executor used to format the rows, or {@code null} to format them in the calling thread
+     * @param threads         the number of threads of the executor
+     * @throws IOException if writing fails
+     */
+    static void writeEmbeddings(WordVectorTable wordVectorTable, String prefix, int ssvDecimals, int tsvDecimals,
+                                ExecutorService executor, int threads) throws IOException {
+        writeEmbeddings(wordVectorTable, prefix, ssvDecimals, tsvDecimals, executor, threads, false);
+    }
+
+    /**
+     * write the given table as SSV and / or TSV, possibly appending its rows to the existing files
+     *
+     * @param append whether to append the rows to the existing output files, rather than overwriting them
+     * @see #writeEmbeddings(WordVectorTable, String, int, int, ExecutorService, int)
+     */
+    static void writeEmbeddings(WordVectorTable wordVectorTable, String prefix, int ssvDecimals, int tsvDecimals,
+                                ExecutorService executor, int threads, boolean append) throws IOException {
+        OutputStream ssvStream = null;
+        OutputStream tsvStream = null;
+        OutputStream metadataStream = null;
+        try {
+            if (ssvDecimals >= 0) {
+                ssvStream = open(prefix + "-vectors.txt", append);
+            }
+            if (tsvDecimals >= 0) {
+                tsvStream = open(prefix + "-vectors.tsv", append);
+                metadataStream = open(prefix + "-metadata.tsv", append);
+            }
+
+            Deque<Future<Chunk>> pending = new ArrayDeque<>();
+            Deque<Chunk> free = new ArrayDeque<>();
+            Iterator<String> tokens = wordVectorTable.tokens();
+            while (tokens.hasNext()) {
+                Chunk chunk = free.isEmpty() ? new Chunk() : free.poll();
+                chunk.tokens.clear();
+                while (tokens.hasNext() && chunk.tokens.size() < ROWS_PER_CHUNK) {
+                    chunk.tokens.add(tokens.next());
+                }
+                if (executor == null) {
+                    chunk.format(wordVectorTable, ssvDecimals, tsvDecimals);
+                    chunk.writeTo(ssvStream, tsvStream, metadataStream);
+                    free.add(chunk);
+                } else {
+                    pending.add(executor.submit(() -> chunk.format(wordVectorTable, ssvDecimals, tsvDecimals)));
+                    if (pending.size() >= threads * 2) {
+                        free.add(ParallelParser.await(pending.poll()).writeTo(ssvStream, tsvStream, metadataStream));
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                ParallelParser.await(pending.poll()).writeTo(ssvStream, tsvStream, metadataStream);
+            }
+        } finally {
+            close(ssvStream);
+            close(tsvStream);
+            close(metadataStream);
+        }
+    }
+
+    private static OutputStream open(String name, boolean append) throws IOException {
+        return new BufferedOutputStream(new FileOutputStream(name, append), 1 << 16);
+    }
+
+    private static void close(OutputStream outputStream) throws IOException {
+        if (outputStream != null) {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * streams rows to the SSV and / or TSV outputs as they are added, formatting them in the calling thread
+     */
+    static class Writer implements EmbeddingsSink {
+
+        private final String prefix;
+        private final int ssvDecimals;
+        private final int tsvDecimals;
+        private final double ssvRounding;
+        private final double tsvRounding;
+        private final Chunk chunk = new Chunk();
+        private OutputStream ssvStream;
+        private OutputStream tsvStream;
+        private OutputStream metadataStream;
+
+        /**
+         * @param prefix      the prefix of the output files
+         * @param ssvDecimals the number of decimals of the SSV values, or a negative number to skip the SSV output
+         * @param tsvDecimals the number of decimals of the TSV values, or a negative number to skip the TSV output
+         * @param append      whether to append the rows to the existing output files, rather than overwriting them
+         * @throws IOException if the output files cannot be opened
+         */
+        Writer(String prefix, int ssvDecimals, int tsvDecimals, boolean append) throws IOException {
+            this.prefix = prefix;
+            this.ssvDecimals = ssvDecimals;
+            this.tsvDecimals = tsvDecimals;
+            this.ssvRounding = Math.pow(10, ssvDecimals);
+            this.tsvRounding = Math.pow(10, tsvDecimals);
+            try {
+                if (ssvDecimals >= 0) {
+                    ssvStream = open(prefix + "-vectors.txt", append);
+                }
+                if (tsvDecimals >= 0) {
+                    tsvStream = open(prefix + "-vectors.tsv", append);
+                    metadataStream = open(prefix + "-metadata.tsv", append);
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void add(String token, float[] vector) throws IOException {
+            chunk.format(token, new FloatArrayVector(vector), ssvDecimals, ssvRounding, tsvDecimals, tsvRounding);
+            if (chunk.length() >= 1 << 16) {
+                chunk.writeTo(ssvStream, tsvStream, metadataStream).clear();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                chunk.writeTo(ssvStream, tsvStream, metadataStream).clear();
+            } finally {
+                EmbeddingsExporter.close(ssvStream);
+                EmbeddingsExporter.close(tsvStream);
+                EmbeddingsExporter.close(metadataStream);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "EmbeddingsExporter.Writer{" + prefix + '}';
+        }
+    }
+
+    /**
+     * a chunk of rows, together with the buffers they get formatted to
+     */
+    private static class Chunk {
+
+        private final List<String> tokens = new ArrayList<>(ROWS_PER_CHUNK);
+        private final Bytes ssv = new Bytes();
+        private final Bytes tsv = new Bytes();
+        private final Bytes metadata = new Bytes();
+
+        Chunk format(WordVectorTable wordVectorTable, int ssvDecimals, int tsvDecimals) {
+            clear();
+            double ssvRounding = Math.pow(10, ssvDecimals);
+            double tsvRounding = Math.pow(10, tsvDecimals);
+            for (String token : tokens) {
+                format(token, wordVectorTable.get(token), ssvDecimals, ssvRounding, tsvDecimals, tsvRounding);
+            }
+            return this;
+        }
+
+        void format(String token, WordVector wordVector, int ssvDecimals, double ssvRounding, int tsvDecimals,
+                    double tsvRounding) {
+            byte[] tokenBytes = token.getBytes(StandardCharsets.UTF_8);
+            if (ssvDecimals >= 0) {
+                ssv.append(tokenBytes);
+                ssv.append(TAB);
+                for (int i = 0; i < wordVector.dimension(); i++) {
+                    ssv.appendRounded(wordVector.getAsFloat(i), ssvDecimals, ssvRounding);
+                    ssv.append(TAB);
+                }
+                ssv.append(NEW_LINE);
+            }
+            if (tsvDecimals >= 0) {
+                metadata.append(tokenBytes);
+                metadata.append(NEW_LINE);
+                for (int i = 0; i < wordVector.dimension(); i++) {
+                    tsv.appendRounded(wordVector.getAsFloat(i), tsvDecimals, tsvRounding);
+                    tsv.append(TAB);
+                }
+                tsv.append(NEW_LINE);
+            }
+        }
+
+        int length() {
+            return ssv.length() + tsv.length() + metadata.length();
+        }
+
+        void clear() {
+            ssv.clear();
+            tsv.clear();
+            metadata.clear();
+        }
+
+        Chunk writeTo(OutputStream ssvStream, OutputStream tsvStream, OutputStream metadataStream) throws IOException {
+            if (ssvStream != null) {
+                ssv.writeTo(ssvStream);
+            }
+            if (tsvStream != null) {
+                tsv.writeTo(tsvStream);
+                metadata.writeTo(metadataStream);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * growable byte array, with in place formatting of rounded decimal values
+     */
+    static class Bytes {
+
+        private byte[] bytes = new byte[1 << 12];
+        private int length;
+
+        void clear() {
+            length = 0;
+        }
+
+        int length() {
+            return length;
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+
+        void append(byte b) {
+            ensureCapacity(1);
+            bytes[length++] = b;
+        }
+
+        void append(byte[] b) {
+            ensureCapacity(b.length);
+            System.arraycopy(b, 0, bytes, length, b.length);
+            length += b.length;
+        }
+
+        /**
+         * append the decimal representation of {@code Math.round(value * rounding) / rounding}, byte for byte equal
+         * to the one of {@link String#valueOf(double)}
+         *
+         * @param value    the value
+         * @param decimals the number of decimals to round to
+         * @param rounding {@code 10^decimals}
+         */
+        void appendRounded(float value, int decimals, double rounding) {
+            long n = Math.round(value * rounding);
+            double v = n / rounding;
+            if (decimals > MAX_DECIMALS || (v != 0 && (Math.abs(v) < 1e-3 || Math.abs(v) >= 1e7))) {
+                // computerized scientific notation, which is not worth duplicating
+                append(String.valueOf(v).getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            if (n < 0) {
+                append((byte) '-');
+                n = -n;
+            }
+            long power = POWERS_OF_TEN[decimals];
+            appendDigits(n / power, 1);
+            append((byte) '.');
+            long fraction = n % power;
+            int digits = Math.max(decimals, 1);
+            while (digits > 1 && fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            appendDigits(fraction, digits);
+        }
+
+        private void appendDigits(long value, int minDigits) {
+            int digits = 1;
+            for (long v = value / 10; v > 0; v /= 10) {
+                digits++;
+            }
+            digits = Math.max(digits, minDigits);
+            ensureCapacity(digits);
+            for (int i = length + digits - 1; i >= length; i--) {
+                bytes[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            length += digits;
+        }
+
+        void writeTo(OutputStream outputStream) throws IOException {
+            outputStream.write(bytes, 0, length);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+}
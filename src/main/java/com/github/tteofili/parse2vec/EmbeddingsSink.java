@@ -0,0 +1,90 @@
+package com.github.tteofili.parse2vec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Destination of embedding rows, which are written out as they are added rather than held in a table; rows are
+ * complete once the sink has been closed.
+ */
+interface EmbeddingsSink extends Closeable {
+
+    /**
+     * add a row
+     *
+     * @param token  the token
+     * @param vector the vector of the token, which the sink may keep a reference to, so it must not be modified
+     *               afterwards
+     * @throws IOException if writing fails
+     */
+    void add(String token, float[] vector) throws IOException;
+
+    /**
+     * @param sink   the sink
+     * @param tokens the predicate of the tokens to add
+     * @return a sink adding to the given sink only the rows whose token matches the given predicate
+     */
+    static EmbeddingsSink filter(EmbeddingsSink sink, Predicate<String> tokens) {
+        return new EmbeddingsSink() {
+            @Override
+            public void add(String token, float[] vector) throws IOException {
+                if (tokens.test(token)) {
+                    sink.add(token, vector);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                sink.close();
+            }
+
+            @Override
+            public String toString() {
+                return sink.toString();
+            }
+        };
+    }
+
+    /**
+     * @param sinks the sinks
+     * @return a sink adding each row to all the given sinks, in order
+     */
+    static EmbeddingsSink of(EmbeddingsSink... sinks) {
+        List<EmbeddingsSink> list = Arrays.asList(sinks);
+        return new EmbeddingsSink() {
+            @Override
+            public void add(String token, float[] vector) throws IOException {
+                for (EmbeddingsSink sink : list) {
+                    sink.add(token, vector);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                IOException exception = null;
+                for (EmbeddingsSink sink : list) {
+                    try {
+                        sink.close();
+                    } catch (IOException e) {
+                        if (exception == null) {
+                            exception = e;
+                        } else {
+                            exception.addSuppressed(e);
+                        }
+                    }
+                }
+                if (exception != null) {
+                    throw exception;
+                }
+            }
+
+            @Override
+            public String toString() {
+                return list.toString();
+            }
+        };
+    }
+}
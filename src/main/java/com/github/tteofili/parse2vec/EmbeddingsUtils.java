@@ -1,102 +1,68 @@
 package com.github.tteofili.parse2vec;
 
+import opennlp.tools.util.wordvector.WordVectorTable;
 import org.apache.commons.math3.linear.MatrixUtils;
 import org.apache.commons.math3.linear.SingularValueDecomposition;
 import org.deeplearning4j.models.embeddings.WeightLookupTable;
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
 import org.deeplearning4j.models.word2vec.VocabWord;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
-import java.util.Iterator;
 
 class EmbeddingsUtils {
 
-    static void writeEmbeddingsAsSSV(MapWordVectorTable wordVectorTable, String prefix, int decimals) throws IOException {
-        double rounding = Math.pow(10, decimals);
-        Charset charset = Charset.forName("UTF-8");
-        byte[] spaceBytes = "\t".getBytes(charset);
-        byte[] crBytes = "\n".getBytes(charset);
-
-        FileOutputStream vectorsFileStream = new FileOutputStream(prefix + "-vectors.txt");
-        Iterator<String> tokens = wordVectorTable.tokens();
+    /**
+     * load pre-trained word vectors: files in the {@link BinaryEmbeddings} format are memory mapped, any other file is
+     * read with {@link WordVectorSerializer#readWord2VecModel(File)} (text, Google binary and DL4J zip formats)
+     *
+     * @param file the file holding the word vectors
+     * @return the word vectors
+     * @throws IOException if the file cannot be read
+     */
+    static WordVectorTable loadWordVectors(File file) throws IOException {
+        if (BinaryEmbeddings.isBinaryEmbeddings(file.toPath())) {
+            return BinaryEmbeddings.open(file.toPath());
+        }
         try {
-            while (tokens.hasNext()) {
-                String pt = tokens.next();
-                vectorsFileStream.write(pt.getBytes(charset));
-                vectorsFileStream.write(spaceBytes);
-                float[] array = wordVectorTable.get(pt).toFloatBuffer().array();
-                for (float f : array) {
-                    double v = Math.round(f * rounding) / rounding;
-                    vectorsFileStream.write(String.valueOf(v).getBytes(charset));
-                    vectorsFileStream.write(spaceBytes);
-                }
-                vectorsFileStream.write(crBytes);
-            }
-        } finally {
-            vectorsFileStream.flush();
-            vectorsFileStream.close();
+            return new Word2VecWordVectorTable(WordVectorSerializer.readWord2VecModel(file));
+        } catch (RuntimeException e) {
+            throw new IOException("cannot read word vectors from " + file, e);
         }
     }
 
+    static void writeEmbeddingsAsSSV(WordVectorTable wordVectorTable, String prefix, int decimals) throws IOException {
+        EmbeddingsExporter.writeEmbeddings(wordVectorTable, prefix, decimals, -1, null, 1);
+    }
+
     static void writeEmbeddingsAsSSV(WeightLookupTable wordVectorTable, String prefix, int decimals) throws IOException {
         double rounding = Math.pow(10, decimals);
-        Charset charset = Charset.forName("UTF-8");
-        byte[] spaceBytes = "\t".getBytes(charset);
-        byte[] crBytes = "\n".getBytes(charset);
-
-        FileOutputStream vectorsFileStream = new FileOutputStream(prefix + "-vectors.txt");
+        EmbeddingsExporter.Bytes line = new EmbeddingsExporter.Bytes();
         Collection<VocabWord> tokens = wordVectorTable.getVocabCache().tokens();
-        try {
+        try (OutputStream vectorsFileStream = new BufferedOutputStream(new FileOutputStream(prefix + "-vectors.txt"), 1 << 16)) {
             for (VocabWord token : tokens) {
-                vectorsFileStream.write(token.getWord().getBytes(charset));
-                vectorsFileStream.write(spaceBytes);
+                line.clear();
+                line.append(token.getWord().getBytes(StandardCharsets.UTF_8));
+                line.append((byte) '\t');
                 float[] array = wordVectorTable.vector(token.getWord()).toFloatVector();
                 for (float f : array) {
-                    double v = Math.round(f * rounding) / rounding;
-                    vectorsFileStream.write(String.valueOf(v).getBytes(charset));
-                    vectorsFileStream.write(spaceBytes);
+                    line.appendRounded(f, decimals, rounding);
+                    line.append((byte) '\t');
                 }
-                vectorsFileStream.write(crBytes);
+                line.append((byte) '\n');
+                line.writeTo(vectorsFileStream);
             }
-        } finally {
-            vectorsFileStream.flush();
-            vectorsFileStream.close();
         }
     }
 
-    static void writeEmbeddingsAsTSV(MapWordVectorTable wordVectorTable, String prefix, int decimals) throws IOException {
-        double rounding = Math.pow(10, decimals);
-        Charset charset = Charset.forName("UTF-8");
-        byte[] tabBytes = "\t".getBytes(charset);
-        byte[] crBytes = "\n".getBytes(charset);
-
-        FileOutputStream vectorsFileStream = new FileOutputStream(prefix + "-vectors.tsv");
-        FileOutputStream metadataFileStream = new FileOutputStream(prefix + "-metadata.tsv");
-
-        Iterator<String> tokens = wordVectorTable.tokens();
-        try {
-            while (tokens.hasNext()) {
-                String pt = tokens.next();
-                metadataFileStream.write(pt.getBytes(charset));
-                metadataFileStream.write(crBytes);
-                float[] array = wordVectorTable.get(pt).toFloatBuffer().array();
-                for (float f : array) {
-                    double v = Math.round(f * rounding) / rounding;
-                    vectorsFileStream.write(String.valueOf(v).getBytes(charset));
-                    vectorsFileStream.write(tabBytes);
-                }
-                vectorsFileStream.write(crBytes);
-            }
-        } finally {
-            metadataFileStream.flush();
-            metadataFileStream.close();
-
-            vectorsFileStream.flush();
-            vectorsFileStream.close();
-        }
+    static void writeEmbeddingsAsTSV(WordVectorTable wordVectorTable, String prefix, int decimals) throws IOException {
+        EmbeddingsExporter.writeEmbeddings(wordVectorTable, prefix, -1, decimals, null, 1);
     }
 
     static double[][] getTruncatedVT(INDArray matrix, int k) {
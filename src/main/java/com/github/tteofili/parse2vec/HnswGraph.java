@@ -0,0 +1,300 @@
+package com.github.tteofili.parse2vec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hierarchical navigable small world graph (see <a href="https://arxiv.org/abs/1603.09320">Malkov and Yashunin</a>)
+ * over normalized vectors, searched by cosine similarity.
+ * <p>
+ * This class implements the search, which is shared by the index being built ({@link HnswIndex}) and the one mapped
+ * from disk ({@link MappedHnswIndex}); subclasses only provide access to the vectors and to the links of each node.
+ * Level {@code 0} nodes have up to {@code 2 * m} links, nodes of upper levels up to {@code m}.
+ */
+abstract class HnswGraph {
+
+    abstract int size();
+
+    abstract int dimension();
+
+    abstract int m();
+
+    /**
+     * @return the entry point node followed by the top level of the graph, the entry point is {@code -1} if the graph
+     * is empty
+     */
+    abstract int[] entry();
+
+    /**
+     * copy the links of a node on the given level
+     *
+     * @param node   the node
+     * @param level  the level
+     * @param buffer the buffer the links are copied to, holding at least {@link #maxConnections(int)} ints
+     * @return the number of links
+     */
+    abstract int neighbours(int node, int level, int[] buffer);
+
+    /**
+     * @return the dot product between the given (normalized) query and the vector of the given node
+     */
+    abstract float similarity(float[] query, int node);
+
+    abstract String token(int node);
+
+    /**
+     * @return a copy of the normalized vector of a node
+     */
+    abstract float[] vector(int node);
+
+    /**
+     * @return the top level of a node
+     */
+    abstract int level(int node);
+
+    int maxConnections(int level) {
+        return level == 0 ? 2 * m() : m();
+    }
+
+    /**
+     * approximate {@code k} nearest neighbours of the given vector
+     *
+     * @param query the query vector, which does not need to be normalized
+     * @param k     the number of neighbours
+     * @param ef    the size of the dynamic candidate list, higher values trade latency for recall
+     * @return the neighbours, by decreasing similarity
+     */
+    List<NearestNeighbourSearch.Neighbour> search(float[] query, int k, int ef) {
+        if (query.length != dimension()) {
+            throw new IllegalArgumentException("wrong query dimension " + query.length + " instead of " + dimension());
+        }
+        int[] entry = entry();
+        if (entry[0] < 0) {
+            return new ArrayList<>();
+        }
+        float[] normalized = Arrays.copyOf(query, query.length);
+        VectorMath.normalize(normalized);
+        int node = entry[0];
+        int[] buffer = new int[maxConnections(0)];
+        for (int level = entry[1]; level > 0; level--) {
+            node = greedySearch(normalized, node, level, buffer);
+        }
+        NodeHeap results = searchLayer(normalized, node, similarity(normalized, node), Math.max(ef, k), 0);
+        while (results.size() > k) {
+            results.pop();
+        }
+        NearestNeighbourSearch.Neighbour[] neighbours = new NearestNeighbourSearch.Neighbour[results.size()];
+        for (int i = neighbours.length - 1; i >= 0; i--) {
+            neighbours[i] = new NearestNeighbourSearch.Neighbour(token(results.peekNode()), results.peekScore());
+            results.pop();
+        }
+        return new ArrayList<>(Arrays.asList(neighbours));
+    }
+
+    /**
+     * move to the most similar node reachable from the given one on the given level
+     */
+    int greedySearch(float[] query, int node, int level, int[] buffer) {
+        float similarity = similarity(query, node);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int count = neighbours(node, level, buffer);
+            for (int i = 0; i < count; i++) {
+                float s = similarity(query, buffer[i]);
+                if (s > similarity) {
+                    similarity = s;
+                    node = buffer[i];
+                    changed = true;
+                }
+            }
+        }
+        return node;
+    }
+
+    /**
+     * best first search of a level of the graph
+     *
+     * @return a min heap of the (up to) {@code ef} most similar nodes found
+     */
+    NodeHeap searchLayer(float[] query, int entryPoint, float entrySimilarity, int ef, int level) {
+        IntSet visited = new IntSet();
+        visited.add(entryPoint);
+        NodeHeap candidates = new NodeHeap(true);
+        NodeHeap results = new NodeHeap(false);
+        candidates.push(entryPoint, entrySimilarity);
+        results.push(entryPoint, entrySimilarity);
+        int[] buffer = new int[maxConnections(level)];
+        while (candidates.size() > 0) {
+            if (results.size() >= ef && candidates.peekScore() < results.peekScore()) {
+                break;
+            }
+            int node = candidates.peekNode();
+            candidates.pop();
+            int count = neighbours(node, level, buffer);
+            for (int i = 0; i < count; i++) {
+                int neighbour = buffer[i];
+                if (visited.add(neighbour)) {
+                    float s = similarity(query, neighbour);
+                    if (results.size() < ef || s > results.peekScore()) {
+                        candidates.push(neighbour, s);
+                        results.push(neighbour, s);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * measure the recall of approximate searches against exact ones
+     * <p>
+     * An approximate neighbour counts as found when it scores at least as much as the {@code k}-th exact neighbour, so
+     * that rows tied with it (e.g. duplicate sentences) are not counted as misses.
+     *
+     * @param exact   the exact {@code k} nearest neighbours of each query, over the same vectors
+     * @param queries the query vectors
+     * @param k       the number of neighbours
+     * @param ef      the size of the dynamic candidate list
+     * @return the average fraction of the exact {@code k} nearest neighbours found by the approximate search
+     */
+    double recall(List<List<NearestNeighbourSearch.Neighbour>> exact, List<float[]> queries, int k, int ef) {
+        double recall = 0;
+        for (int q = 0; q < queries.size(); q++) {
+            float[] query = queries.get(q);
+            List<NearestNeighbourSearch.Neighbour> expected = exact.get(q);
+            if (expected.isEmpty()) {
+                recall += 1;
+                continue;
+            }
+            float threshold = expected.get(expected.size() - 1).getScore() - 1e-6f;
+            int found = 0;
+            for (NearestNeighbourSearch.Neighbour neighbour : search(query, k, ef)) {
+                if (neighbour.getScore() >= threshold) {
+                    found++;
+                }
+            }
+            recall += (double) found / expected.size();
+        }
+        return queries.isEmpty() ? 1 : recall / queries.size();
+    }
+
+    /**
+     * binary heap of nodes, ordered by score
+     */
+    static class NodeHeap {
+
+        private final boolean max;
+        private int[] nodes = new int[16];
+        private float[] scores = new float[16];
+        private int size;
+
+        NodeHeap(boolean max) {
+            this.max = max;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int peekNode() {
+            return nodes[0];
+        }
+
+        float peekScore() {
+            return scores[0];
+        }
+
+        void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(score, scores[parent])) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        void pop() {
+            int node = nodes[--size];
+            float score = scores[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && before(scores[child + 1], scores[child])) {
+                    child++;
+                }
+                if (!before(scores[child], score)) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        private boolean before(float score, float other) {
+            return max ? score > other : score < other;
+        }
+    }
+
+    /**
+     * open addressing set of non negative ints
+     */
+    static class IntSet {
+
+        private int[] slots = new int[256];
+        private int size;
+
+        IntSet() {
+            Arrays.fill(slots, -1);
+        }
+
+        /**
+         * @return {@code true} if the value was not in the set
+         */
+        boolean add(int value) {
+            if (2 * (size + 1) > slots.length) {
+                int[] old = slots;
+                slots = new int[old.length * 2];
+                Arrays.fill(slots, -1);
+                size = 0;
+                for (int v : old) {
+                    if (v >= 0) {
+                        add(v);
+                    }
+                }
+            }
+            int mask = slots.length - 1;
+            int h = value * 0x9E3779B9;
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (slots[slot] >= 0) {
+                if (slots[slot] == value) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = value;
+            size++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVector;
+import opennlp.tools.util.wordvector.WordVectorTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In memory {@link HnswGraph}, built incrementally, and in parallel, from embedding tables.
+ * <p>
+ * Rows are first appended (vectors are normalized and a random level is drawn for each of them), then inserted in the
+ * graph by the threads of an executor: each thread only ever holds the lock of a single node at a time, while reading
+ * or updating its links, so insertions do not block each other. Links are selected with the heuristic which favours
+ * diverse neighbours, both for new nodes and when the links of an existing node overflow.
+ * The index can be searched between (but not during) calls to {@link #addAll(WordVectorTable, ExecutorService, int)},
+ * and saved to disk, to be memory mapped by {@link MappedHnswIndex}, or loaded back by {@link #load(String, int, long)}
+ * to add more rows to it.
+ */
+class HnswIndex extends HnswGraph {
+
+    static final int MAGIC = 0x50325648;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    private static final int BLOCK_ROWS = 1024;
+    private static final int LOCK_STRIPES = 1 << 10;
+
+    private final int dimension;
+    private final int m;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final long seed;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private float[][] blocks = new float[16][];
+    private String[] tokens = new String[BLOCK_ROWS];
+    private int[] levels = new int[BLOCK_ROWS];
+    private int[][][] links = new int[BLOCK_ROWS][][];
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /**
+     * @param dimension      the dimension of the vectors
+     * @param m              the number of links of each node on upper levels, level 0 nodes have {@code 2 * m}
+     * @param efConstruction the size of the dynamic candidate list used to find the links of new nodes
+     * @param seed           the seed used to draw the levels of the nodes
+     */
+    HnswIndex(int dimension, int m, int efConstruction, long seed) {
+        if (m < 2) {
+            throw new IllegalArgumentException("m should be at least 2");
+        }
+        this.dimension = dimension;
+        this.m = m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1 / Math.log(m);
+        this.seed = seed;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * load an index saved by {@link #save(String)} into memory, so that more rows can be added to it
+     *
+     * @param prefix         the prefix of the index files
+     * @param efConstruction the size of the dynamic candidate list used to find the links of new nodes
+     * @param seed           the seed used to draw the levels of the new nodes
+     * @return the index, holding the nodes, links and entry point of the saved one
+     * @throws IOException if the files cannot be read or are not valid
+     */
+    static HnswIndex load(String prefix, int efConstruction, long seed) throws IOException {
+        MappedHnswIndex mapped = MappedHnswIndex.open(prefix);
+        HnswIndex index = new HnswIndex(mapped.dimension(), mapped.m(), efConstruction, seed);
+        int[] buffer = new int[mapped.maxConnections(0)];
+        for (int node = 0; node < mapped.size(); node++) {
+            int level = mapped.level(node);
+            index.append(mapped.token(node), mapped.vector(node), level);
+            for (int l = 0; l <= level; l++) {
+                int[] nodeLinks = index.links[node][l];
+                nodeLinks[0] = mapped.neighbours(node, l, buffer);
+                System.arraycopy(buffer, 0, nodeLinks, 1, nodeLinks[0]);
+            }
+        }
+        int[] entry = mapped.entry();
+        index.entryPoint = entry[0];
+        index.maxLevel = entry[1];
+        return index;
+    }
+
+    /**
+     * add all the rows of the given table to the index
+     *
+     * @param wordVectorTable the table
+     * @param executor        the executor used to insert the rows
+     * @param threads         the number of threads of the executor
+     * @throws IOException if an insertion fails
+     */
+    void addAll(WordVectorTable wordVectorTable, ExecutorService executor, int threads) throws IOException {
+        addAll(wordVectorTable, 0, executor, threads);
+    }
+
+    /**
+     * add the rows of the given table, from the given one on, to the index, e.g. the rows appended to a table whose
+     * first rows are already indexed
+     *
+     * @param wordVectorTable the table
+     * @param fromRow         the first row to add
+     * @param executor        the executor used to insert the rows
+     * @param threads         the number of threads of the executor
+     * @throws IOException if an insertion fails
+     */
+    void addAll(WordVectorTable wordVectorTable, int fromRow, ExecutorService executor, int threads) throws IOException {
+        if (wordVectorTable.size() > 0 && wordVectorTable.dimension() != dimension) {
+            throw new IllegalArgumentException("wrong table dimension " + wordVectorTable.dimension() + " instead of " + dimension);
+        }
+        int from = size;
+        Iterator<String> tokenIterator = wordVectorTable.tokens();
+        for (int row = 0; tokenIterator.hasNext(); row++) {
+            String token = tokenIterator.next();
+            if (row >= fromRow) {
+                append(token, wordVectorTable.get(token));
+            }
+        }
+        int to = size;
+        if (from == to) {
+            return;
+        }
+        if (entryPoint < 0) {
+            entryPoint = from;
+            maxLevel = levels[from];
+            from++;
+        }
+        AtomicInteger next = new AtomicInteger(from);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                int row;
+                while ((row = next.getAndIncrement()) < to) {
+                    insert(row);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            ParallelParser.await(future);
+        }
+    }
+
+    private void append(String token, WordVector vector) {
+        float[] normalized = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            normalized[i] = vector.getAsFloat(i);
+        }
+        VectorMath.normalize(normalized);
+        int level = (int) (-Math.log(1 - new Random(seed ^ (size * 0x9E3779B97F4A7C15L)).nextDouble()) * levelMultiplier);
+        append(token, normalized, level);
+    }
+
+    private void append(String token, float[] normalized, int level) {
+        int row = size;
+        if (row == Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("cannot index more than " + row + " rows");
+        }
+        if (row == tokens.length) {
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 8, (long) row * 2);
+            tokens = Arrays.copyOf(tokens, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            links = Arrays.copyOf(links, capacity);
+        }
+        int block = row / BLOCK_ROWS;
+        if (block == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blocks.length * 2);
+        }
+        if (blocks[block] == null) {
+            blocks[block] = new float[BLOCK_ROWS * dimension];
+        }
+        System.arraycopy(normalized, 0, blocks[block], (row % BLOCK_ROWS) * dimension, dimension);
+        tokens[row] = token;
+        levels[row] = level;
+        links[row] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[row][l] = new int[maxConnections(l) + 1];
+        }
+        size++;
+    }
+
+    private void insert(int row) {
+        float[] query = vector(row);
+        int level = levels[row];
+        int[] entry = entry();
+        int node = entry[0];
+        int[] buffer = new int[maxConnections(0) + 1];
+        for (int l = entry[1]; l > level; l--) {
+            node = greedySearch(query, node, l, buffer);
+        }
+        for (int l = Math.min(level, entry[1]); l >= 0; l--) {
+            NodeHeap candidates = searchLayer(query, node, similarity(query, node), efConstruction, l);
+            int count = candidates.size();
+            int[] nodes = new int[count];
+            float[] similarities = new float[count];
+            for (int i = count - 1; i >= 0; i--) {
+                nodes[i] = candidates.peekNode();
+                similarities[i] = candidates.peekScore();
+                candidates.pop();
+            }
+            int selected = selectNeighbours(row, nodes, similarities, count, m);
+            synchronized (lock(row)) {
+                int[] rowLinks = links[row][l];
+                System.arraycopy(nodes, 0, rowLinks, 1, selected);
+                rowLinks[0] = selected;
+            }
+            for (int i = 0; i < selected; i++) {
+                connect(nodes[i], row, l);
+            }
+            node = nodes[0];
+        }
+        if (level > entry[1]) {
+            synchronized (this) {
+                if (level > maxLevel) {
+                    maxLevel = level;
+                    entryPoint = row;
+                }
+            }
+        }
+    }
+
+    /**
+     * add a link from a node to a new one, pruning the links of the node if they overflow
+     */
+    private void connect(int node, int newNode, int level) {
+        synchronized (lock(node)) {
+            int[] nodeLinks = links[node][level];
+            int count = nodeLinks[0];
+            int maxConnections = maxConnections(level);
+            if (count < maxConnections) {
+                nodeLinks[count + 1] = newNode;
+                nodeLinks[0] = count + 1;
+                return;
+            }
+            float[] query = vector(node);
+            int[] nodes = new int[count + 1];
+            float[] similarities = new float[count + 1];
+            for (int i = 0; i <= count; i++) {
+                nodes[i] = i < count ? nodeLinks[i + 1] : newNode;
+                similarities[i] = similarity(query, nodes[i]);
+            }
+            sortDescending(nodes, similarities);
+            int selected = selectNeighbours(node, nodes, similarities, count + 1, maxConnections);
+            System.arraycopy(nodes, 0, nodeLinks, 1, selected);
+            nodeLinks[0] = selected;
+        }
+    }
+
+    /**
+     * select, in place, the links of a node among candidates sorted by decreasing similarity to the node: a candidate
+     * is kept only if it is more similar to the node than to any candidate already kept
+     *
+     * @return the number of selected candidates, which are moved to the beginning of the arrays
+     */
+    private int selectNeighbours(int node, int[] nodes, float[] similarities, int count, int max) {
+        int selected = 0;
+        for (int i = 0; i < count && selected < max; i++) {
+            int candidate = nodes[i];
+            if (candidate == node) {
+                continue;
+            }
+            float[] candidateVector = vector(candidate);
+            boolean diverse = true;
+            for (int j = 0; j < selected && diverse; j++) {
+                diverse = similarity(candidateVector, nodes[j]) <= similarities[i];
+            }
+            if (diverse) {
+                nodes[selected] = candidate;
+                similarities[selected] = similarities[i];
+                selected++;
+            }
+        }
+        return selected;
+    }
+
+    private static void sortDescending(int[] nodes, float[] similarities) {
+        for (int i = 1; i < nodes.length; i++) {
+            int node = nodes[i];
+            float similarity = similarities[i];
+            int j = i - 1;
+            while (j >= 0 && similarities[j] < similarity) {
+                nodes[j + 1] = nodes[j];
+                similarities[j + 1] = similarities[j];
+                j--;
+            }
+            nodes[j + 1] = node;
+            similarities[j + 1] = similarity;
+        }
+    }
+
+    private Object lock(int node) {
+        return locks[node & (LOCK_STRIPES - 1)];
+    }
+
+    @Override
+    float[] vector(int node) {
+        int offset = (node % BLOCK_ROWS) * dimension;
+        return Arrays.copyOfRange(blocks[node / BLOCK_ROWS], offset, offset + dimension);
+    }
+
+    @Override
+    int level(int node) {
+        return levels[node];
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    int dimension() {
+        return dimension;
+    }
+
+    @Override
+    int m() {
+        return m;
+    }
+
+    @Override
+    synchronized int[] entry() {
+        return new int[]{entryPoint, maxLevel};
+    }
+
+    @Override
+    int neighbours(int node, int level, int[] buffer) {
+        synchronized (lock(node)) {
+            int[] nodeLinks = links[node][level];
+            int count = nodeLinks[0];
+            System.arraycopy(nodeLinks, 1, buffer, 0, count);
+            return count;
+        }
+    }
+
+    @Override
+    float similarity(float[] query, int node) {
+        return VectorMath.dot(query, 0, blocks[node / BLOCK_ROWS], (node % BLOCK_ROWS) * dimension, dimension);
+    }
+
+    @Override
+    String token(int node) {
+        return tokens[node];
+    }
+
+    /**
+     * save the index as {@code <prefix>-hnsw.bin}, holding the graph, and {@code <prefix>-hnsw-vectors.bin}, holding
+     * the normalized vectors in the {@link BinaryEmbeddings} format
+     * <p>
+     * The graph file is made of a 64 bytes header (magic, version, dimension, m, size, entry point, top level, a
+     * reserved int and the total length of the upper levels links (long)), the levels of the nodes, the level 0 links (a
+     * {@code 2 * m + 1} ints record per node: the links count followed by the links), the offsets of the upper levels
+     * records of each node and the upper levels records ({@code m + 1} ints per level), all little endian.
+     *
+     * @param prefix the prefix of the output files
+     * @throws IOException if writing fails
+     */
+    void save(String prefix) throws IOException {
+        try (BinaryEmbeddings.Writer writer = new BinaryEmbeddings.Writer(Paths.get(prefix + "-hnsw-vectors.bin"), dimension)) {
+            for (int node = 0; node < size; node++) {
+                writer.add(tokens[node], vector(node));
+            }
+        }
+        long upperLength = 0;
+        for (int node = 0; node < size; node++) {
+            upperLength += (long) levels[node] * (m + 1);
+        }
+        Path path = Paths.get(prefix + "-hnsw.bin");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(m).putInt(size).putInt(entryPoint)
+                    .putInt(maxLevel).putInt(0).putLong(upperLength);
+            while (buffer.position() < HEADER_SIZE) {
+                buffer.put((byte) 0);
+            }
+            for (int node = 0; node < size; node++) {
+                buffer = putInt(channel, buffer, levels[node]);
+            }
+            for (int node = 0; node < size; node++) {
+                int[] nodeLinks = links[node][0];
+                for (int i = 0; i < nodeLinks.length; i++) {
+                    buffer = putInt(channel, buffer, i <= nodeLinks[0] ? nodeLinks[i] : -1);
+                }
+            }
+            long offset = 0;
+            for (int node = 0; node < size; node++) {
+                if (buffer.remaining() < 8) {
+                    flush(channel, buffer);
+                }
+                buffer.putLong(offset);
+                offset += (long) levels[node] * (m + 1);
+            }
+            for (int node = 0; node < size; node++) {
+                for (int l = 1; l <= levels[node]; l++) {
+                    int[] nodeLinks = links[node][l];
+                    for (int i = 0; i < nodeLinks.length; i++) {
+                        buffer = putInt(channel, buffer, i <= nodeLinks[0] ? nodeLinks[i] : -1);
+                    }
+                }
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    private static ByteBuffer putInt(FileChannel channel, ByteBuffer buffer, int value) throws IOException {
+        if (buffer.remaining() < 4) {
+            flush(channel, buffer);
+        }
+        return buffer.putInt(value);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "HnswIndex{" + "dimension=" + dimension + ", m=" + m + ", efConstruction=" + efConstruction
+                + ", size=" + size + ", maxLevel=" + maxLevel + '}';
+    }
+}
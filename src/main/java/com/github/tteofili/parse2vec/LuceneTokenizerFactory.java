@@ -29,13 +29,19 @@ import java.io.InputStreamReader;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * DL4J {@link TokenizerFactory} based on Lucene's {@link Analyzer}s
  */
 public class LuceneTokenizerFactory implements TokenizerFactory {
 
+  private static final int DEFAULT_CACHE_SIZE = 1 << 17;
+
   private final Analyzer analyzer;
+  private final int cacheSize;
+  private final Map<String, String> normalized;
 
   public LuceneTokenizerFactory() {
     try {
@@ -43,10 +49,63 @@ public class LuceneTokenizerFactory implements TokenizerFactory {
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
+    this.cacheSize = DEFAULT_CACHE_SIZE;
+    this.normalized = new ConcurrentHashMap<>();
   }
 
   public LuceneTokenizerFactory(Analyzer analyzer) {
+    this(analyzer, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * @param analyzer  the analyzer
+   * @param cacheSize the maximum number of words whose normalized form is cached by {@link #normalize(String)}
+   */
+  public LuceneTokenizerFactory(Analyzer analyzer, int cacheSize) {
     this.analyzer = analyzer;
+    this.cacheSize = cacheSize;
+    this.normalized = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * normalize a single word, e.g. the text of a parse tree leaf, as {@code create(word).nextToken()} would, without
+   * collecting the tokens in a list.
+   * The analyzer reuses its token stream within each thread and normalized words are cached, the cache is emptied
+   * when it reaches its maximum size.
+   *
+   * @param word the word
+   * @return the first token produced by the analyzer, or the word itself if the analyzer produces no tokens
+   */
+  public String normalize(String word) {
+    String token = normalized.get(word);
+    if (token == null) {
+      token = firstToken(word);
+      if (normalized.size() >= cacheSize) {
+        normalized.clear();
+      }
+      normalized.put(word, token);
+    }
+    return token;
+  }
+
+  private String firstToken(String word) {
+    TokenStream tokenStream = analyzer.tokenStream(null, word);
+    try {
+      CharTermAttribute charTermAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+      tokenStream.reset();
+      String token = null;
+      while (tokenStream.incrementToken()) {
+        if (token == null) {
+          token = charTermAttribute.toString();
+        }
+      }
+      tokenStream.end();
+      return token != null ? token : word;
+    } catch (IOException ioe) {
+      throw new RuntimeException("Error occurred while iterating over tokenstream", ioe);
+    } finally {
+      IOUtils.closeWhileHandlingException(tokenStream);
+    }
   }
 
   @Override
@@ -0,0 +1,190 @@
+package com.github.tteofili.parse2vec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Read only {@link HnswGraph} memory mapped from the files written by {@link HnswIndex#save(String)}.
+ * <p>
+ * Neither the graph nor the vectors are read when the index is opened, pages are loaded lazily by the OS while
+ * searching, and shared among all the processes mapping the same files. Instances are safe for concurrent searches.
+ */
+public class MappedHnswIndex extends HnswGraph {
+
+    private static final int CHUNK_INTS = 1 << 28;
+
+    private final Path path;
+    private final MappedWordVectorTable vectors;
+    private final int dimension;
+    private final int m;
+    private final int size;
+    private final int entryPoint;
+    private final int maxLevel;
+    private final IntBuffer levels;
+    private final IntBuffer[] level0;
+    private final LongBuffer upperOffsets;
+    private final IntBuffer[] upper;
+
+    private MappedHnswIndex(String prefix) throws IOException {
+        this.path = Paths.get(prefix + "-hnsw.bin");
+        this.vectors = BinaryEmbeddings.open(Paths.get(prefix + "-hnsw-vectors.bin"));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HnswIndex.HEADER_SIZE) {
+                throw new IOException("not an hnsw index file " + path);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HnswIndex.HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != HnswIndex.MAGIC) {
+                throw new IOException("not an hnsw index file " + path);
+            }
+            if (header.getInt(4) != HnswIndex.VERSION) {
+                throw new IOException("unsupported version " + header.getInt(4) + " of hnsw index file " + path);
+            }
+            this.dimension = header.getInt(8);
+            this.m = header.getInt(12);
+            this.size = header.getInt(16);
+            this.entryPoint = header.getInt(20);
+            this.maxLevel = header.getInt(24);
+            long upperLength = header.getLong(32);
+
+            long levelsOffset = HnswIndex.HEADER_SIZE;
+            long level0Offset = levelsOffset + (long) size * 4;
+            long level0Length = (long) size * (2 * m + 1);
+            long upperOffsetsOffset = level0Offset + level0Length * 4;
+            long upperOffset = upperOffsetsOffset + (long) size * 8;
+            if (dimension != vectors.dimension() || size != vectors.size() || m < 2
+                    || upperOffset + upperLength * 4 != fileSize) {
+                throw new IOException("corrupted hnsw index file " + path);
+            }
+            this.levels = map(channel, levelsOffset, (long) size * 4).asIntBuffer();
+            this.level0 = mapInts(channel, level0Offset, level0Length);
+            this.upperOffsets = map(channel, upperOffsetsOffset, (long) size * 8).asLongBuffer();
+            this.upper = mapInts(channel, upperOffset, upperLength);
+        }
+    }
+
+    /**
+     * open the index saved by {@link Parse2Vec} with {@code -Dparse2vec.hnsw=true}, mapping its files into memory
+     *
+     * @param prefix the prefix of the index files, e.g. {@code pt-sentence} for {@code pt-sentence-hnsw.bin} and
+     *               {@code pt-sentence-hnsw-vectors.bin}
+     * @return the index
+     * @throws IOException if the files cannot be read or are not valid
+     */
+    public static MappedHnswIndex open(String prefix) throws IOException {
+        return new MappedHnswIndex(prefix);
+    }
+
+    private ByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("section of " + length + " bytes is too large to be mapped from " + path);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * map a section of ints in chunks of {@code CHUNK_INTS}, so that it can exceed 2GB
+     */
+    private IntBuffer[] mapInts(FileChannel channel, long position, long length) throws IOException {
+        IntBuffer[] chunks = new IntBuffer[(int) ((length + CHUNK_INTS - 1) / CHUNK_INTS)];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            long start = (long) chunk * CHUNK_INTS;
+            chunks[chunk] = map(channel, position + start * 4, Math.min(CHUNK_INTS, length - start) * 4).asIntBuffer();
+        }
+        return chunks;
+    }
+
+    private static int get(IntBuffer[] chunks, long index) {
+        return chunks[(int) (index / CHUNK_INTS)].get((int) (index % CHUNK_INTS));
+    }
+
+    /**
+     * approximate {@code k} nearest neighbours of the given vector
+     *
+     * @param query the query vector, which does not need to be normalized
+     * @param k     the number of neighbours
+     * @param ef    the size of the dynamic candidate list, higher values trade latency for recall
+     * @return the neighbours, by decreasing similarity
+     */
+    @Override
+    public List<NearestNeighbourSearch.Neighbour> search(float[] query, int k, int ef) {
+        return super.search(query, k, ef);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    int m() {
+        return m;
+    }
+
+    @Override
+    int[] entry() {
+        return new int[]{entryPoint, maxLevel};
+    }
+
+    @Override
+    int neighbours(int node, int level, int[] buffer) {
+        IntBuffer[] chunks;
+        long start;
+        if (level == 0) {
+            chunks = level0;
+            start = (long) node * (2 * m + 1);
+        } else {
+            if (level > levels.get(node)) {
+                return 0;
+            }
+            chunks = upper;
+            start = upperOffsets.get(node) + (long) (level - 1) * (m + 1);
+        }
+        int count = get(chunks, start);
+        for (int i = 0; i < count; i++) {
+            buffer[i] = get(chunks, start + 1 + i);
+        }
+        return count;
+    }
+
+    @Override
+    float similarity(float[] query, int node) {
+        return vectors.dot(node, query);
+    }
+
+    @Override
+    String token(int node) {
+        return vectors.token(node);
+    }
+
+    @Override
+    float[] vector(int node) {
+        float[] vector = new float[dimension];
+        vectors.vector(node).toFloatBuffer().get(vector);
+        return vector;
+    }
+
+    @Override
+    int level(int node) {
+        return levels.get(node);
+    }
+
+    @Override
+    public String toString() {
+        return "MappedHnswIndex{" + "path=" + path + ", dimension=" + dimension + ", m=" + m + ", size=" + size + '}';
+    }
+}
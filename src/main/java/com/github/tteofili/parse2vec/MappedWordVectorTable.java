@@ -0,0 +1,248 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVector;
+import opennlp.tools.util.wordvector.WordVectorTable;
+import opennlp.tools.util.wordvector.WordVectorType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read only {@link WordVectorTable} over a file written by {@link BinaryEmbeddings.Writer}.
+ * <p>
+ * The whole file is memory mapped: opening a table does not read the vectors, which are paged in lazily by the OS
+ * (and shared among all the processes mapping the same file). Vectors returned by {@link #get(String)} are views over
+ * the mapped matrix, tokens are looked up by comparing their UTF-8 bytes against the mapped dictionary.
+ * The matrix is mapped in chunks of whole rows, so it can exceed 2GB; the dictionary sections cannot.
+ * Instances are safe for concurrent reads.
+ */
+class MappedWordVectorTable implements WordVectorTable {
+
+  private static final int MAX_CHUNK_SIZE = 1 << 30;
+
+  private final Path path;
+  private final int dimension;
+  private final int size;
+  private final int rowsPerChunk;
+  private final FloatBuffer[] matrix;
+  private final LongBuffer offsets;
+  private final ByteBuffer tokens;
+  private final IntBuffer slots;
+
+  MappedWordVectorTable(Path path) throws IOException {
+    this.path = path;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      if (fileSize < BinaryEmbeddings.HEADER_SIZE) {
+        throw new IOException("not a binary embeddings file " + path);
+      }
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinaryEmbeddings.HEADER_SIZE)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      if (header.getInt(0) != BinaryEmbeddings.MAGIC) {
+        throw new IOException("not a binary embeddings file " + path);
+      }
+      if (header.getInt(4) != BinaryEmbeddings.VERSION) {
+        throw new IOException("unsupported version " + header.getInt(4) + " of binary embeddings file " + path);
+      }
+      this.dimension = header.getInt(8);
+      int hashCapacity = header.getInt(12);
+      long rows = header.getLong(16);
+      long matrixOffset = header.getLong(24);
+      long offsetsOffset = header.getLong(32);
+      long tokensOffset = header.getLong(40);
+      long hashOffset = header.getLong(48);
+      if (dimension <= 0 || rows < 0 || rows > Integer.MAX_VALUE || Integer.bitCount(hashCapacity) != 1
+          || offsetsOffset != matrixOffset + rows * dimension * 4 || tokensOffset != offsetsOffset + (rows + 1) * 8
+          || hashOffset < tokensOffset || hashOffset + (long) hashCapacity * 4 != fileSize) {
+        throw new IOException("corrupted binary embeddings file " + path);
+      }
+      this.size = (int) rows;
+      this.rowsPerChunk = Math.max(1, MAX_CHUNK_SIZE / (dimension * 4));
+      this.matrix = new FloatBuffer[(size + rowsPerChunk - 1) / rowsPerChunk];
+      for (int chunk = 0; chunk < matrix.length; chunk++) {
+        long chunkRows = Math.min(rowsPerChunk, size - (long) chunk * rowsPerChunk);
+        matrix[chunk] = map(channel, matrixOffset + (long) chunk * rowsPerChunk * dimension * 4,
+            chunkRows * dimension * 4).asFloatBuffer();
+      }
+      this.offsets = map(channel, offsetsOffset, tokensOffset - offsetsOffset).asLongBuffer();
+      this.tokens = map(channel, tokensOffset, hashOffset - tokensOffset);
+      this.slots = map(channel, hashOffset, fileSize - hashOffset).asIntBuffer();
+    }
+  }
+
+  private ByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("section of " + length + " bytes is too large to be mapped from " + path);
+    }
+    return channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * @param token the token
+   * @return the row of the given token, or {@code -1} if the token is not in the table
+   */
+  int row(String token) {
+    byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+    int mask = slots.capacity() - 1;
+    int slot = BinaryEmbeddings.hash(token) & mask;
+    int row;
+    while ((row = slots.get(slot)) >= 0) {
+      if (matches(row, bytes)) {
+        return row;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private boolean matches(int row, byte[] bytes) {
+    int start = (int) offsets.get(row);
+    int end = (int) offsets.get(row + 1);
+    if (end - start != bytes.length) {
+      return false;
+    }
+    for (int i = 0; i < bytes.length; i++) {
+      if (tokens.get(start + i) != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  String token(int row) {
+    int start = (int) offsets.get(row);
+    byte[] bytes = new byte[(int) offsets.get(row + 1) - start];
+    ByteBuffer buffer = tokens.duplicate();
+    buffer.position(start);
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param row a row
+   * @return a view over the vector stored in the given row
+   */
+  WordVector vector(int row) {
+    FloatBuffer buffer = matrix[row / rowsPerChunk].duplicate();
+    int offset = (row % rowsPerChunk) * dimension;
+    buffer.position(offset);
+    buffer.limit(offset + dimension);
+    return new MappedVector(buffer.slice());
+  }
+
+  /**
+   * @param row   a row
+   * @param query a vector
+   * @return the dot product between the vector of the given row and the given one, read in place
+   */
+  float dot(int row, float[] query) {
+    FloatBuffer chunk = matrix[row / rowsPerChunk];
+    return VectorMath.dot(query, chunk, (row % rowsPerChunk) * dimension, dimension);
+  }
+
+  @Override
+  public WordVector get(String token) {
+    int row = row(token);
+    return row >= 0 ? vector(row) : null;
+  }
+
+  @Override
+  public Iterator<String> tokens() {
+    return new Iterator<String>() {
+      private int row = 0;
+
+      @Override
+      public boolean hasNext() {
+        return row < size;
+      }
+
+      @Override
+      public String next() {
+        if (row >= size) {
+          throw new NoSuchElementException();
+        }
+        return token(row++);
+      }
+    };
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int dimension() {
+    return dimension;
+  }
+
+  @Override
+  public String toString() {
+    return "MappedWordVectorTable{" + "path=" + path + ", dimension=" + dimension + ", size=" + size + '}';
+  }
+
+  /**
+   * a {@link WordVector} backed by a (mapped) {@link FloatBuffer}
+   */
+  static class MappedVector implements WordVector {
+
+    private final FloatBuffer buffer;
+
+    MappedVector(FloatBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public WordVectorType getDataType() {
+      return WordVectorType.FLOAT;
+    }
+
+    @Override
+    public float getAsFloat(int index) {
+      return buffer.get(index);
+    }
+
+    @Override
+    public double getAsDouble(int index) {
+      return buffer.get(index);
+    }
+
+    @Override
+    public FloatBuffer toFloatBuffer() {
+      return buffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public DoubleBuffer toDoubleBuffer() {
+      double[] doubleVector = new double[buffer.capacity()];
+      for (int i = 0; i < doubleVector.length; i++) {
+        doubleVector[i] = buffer.get(i);
+      }
+      return DoubleBuffer.wrap(doubleVector);
+    }
+
+    @Override
+    public int dimension() {
+      return buffer.capacity();
+    }
+
+    @Override
+    public String toString() {
+      float[] vector = new float[buffer.capacity()];
+      buffer.duplicate().get(vector);
+      return Arrays.toString(vector);
+    }
+  }
+}
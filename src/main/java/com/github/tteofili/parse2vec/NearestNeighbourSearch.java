@@ -0,0 +1,399 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVector;
+import opennlp.tools.util.wordvector.WordVectorTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * Exact (brute force) cosine similarity nearest neighbour search over an embedding table.
+ * <p>
+ * Rows are normalized once, when the search is created, and stored in fixed size blocks of contiguous floats, so that
+ * scoring a query is a sequence of dot products over memory which is read linearly. Batches of queries are scored
+ * together, block after block, so that each block is read from memory once for the whole batch. The best {@code k}
+ * rows of each query are kept in a bounded binary heap.
+ * Searches can be split across the threads of an executor: single queries by ranges of blocks, batches by queries.
+ * Instances are immutable and safe for concurrent use.
+ * <p>
+ * A few queries can also be answered exactly with {@link #scan(WordVectorTable, List, int)}, without copying the table,
+ * e.g. to measure the recall of approximate searches over a memory mapped table which does not fit in the heap.
+ */
+public class NearestNeighbourSearch {
+
+    static final int BLOCK_ROWS = 1024;
+    private static final int QUERY_BATCH = 8;
+
+    private final int dimension;
+    private final int size;
+    private final String[] tokens;
+    private final Map<String, Integer> rows;
+    private final float[][] blocks;
+
+    public NearestNeighbourSearch(WordVectorTable wordVectorTable) {
+        this.dimension = wordVectorTable.dimension();
+        this.size = wordVectorTable.size();
+        this.tokens = new String[size];
+        this.rows = new HashMap<>(size * 4 / 3 + 1);
+        this.blocks = new float[(size + BLOCK_ROWS - 1) / BLOCK_ROWS][];
+        Iterator<String> tokenIterator = wordVectorTable.tokens();
+        for (int row = 0; row < size; row++) {
+            String token = tokenIterator.next();
+            int block = row / BLOCK_ROWS;
+            if (blocks[block] == null) {
+                blocks[block] = new float[Math.min(BLOCK_ROWS, size - block * BLOCK_ROWS) * dimension];
+            }
+            tokens[row] = token;
+            rows.putIfAbsent(token, row);
+            WordVector vector = wordVectorTable.get(token);
+            float[] data = blocks[block];
+            int offset = (row % BLOCK_ROWS) * dimension;
+            for (int i = 0; i < dimension; i++) {
+                data[offset + i] = vector.getAsFloat(i);
+            }
+            VectorMath.normalize(data, offset, dimension);
+        }
+    }
+
+    /**
+     * load the search over a binary embeddings file written by {@link Parse2Vec} (e.g. {@code pt-word-vectors.bin}),
+     * the rows are read from the memory mapped file and copied, normalized, to the heap
+     *
+     * @param embeddings the binary embeddings file
+     * @return the search
+     * @throws IOException if the file cannot be read
+     */
+    public static NearestNeighbourSearch load(File embeddings) throws IOException {
+        return new NearestNeighbourSearch(BinaryEmbeddings.open(embeddings.toPath()));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * the {@code k} nearest neighbours of a token of the table, excluding the token itself
+     *
+     * @param token the token
+     * @param k     the number of neighbours
+     * @return the neighbours, by decreasing similarity, or an empty list if the token is not in the table
+     */
+    public List<Neighbour> nearest(String token, int k) {
+        Integer row = rows.get(token);
+        if (row == null) {
+            return Collections.emptyList();
+        }
+        float[] query = Arrays.copyOfRange(blocks[row / BLOCK_ROWS], (row % BLOCK_ROWS) * dimension,
+                (row % BLOCK_ROWS + 1) * dimension);
+        TopK topK = new TopK(k + 1);
+        score(new float[][]{query}, new TopK[]{topK}, 0, blocks.length);
+        List<Neighbour> neighbours = new ArrayList<>(topK.toNeighbours(tokens));
+        neighbours.removeIf(neighbour -> neighbour.getToken().equals(token));
+        return neighbours.size() > k ? neighbours.subList(0, k) : neighbours;
+    }
+
+    /**
+     * the {@code k} nearest neighbours of the given vector
+     *
+     * @param query the query vector, which does not need to be normalized
+     * @param k     the number of neighbours
+     * @return the neighbours, by decreasing similarity
+     */
+    public List<Neighbour> search(float[] query, int k) {
+        TopK topK = new TopK(k);
+        score(new float[][]{normalized(query)}, new TopK[]{topK}, 0, blocks.length);
+        return topK.toNeighbours(tokens);
+    }
+
+    /**
+     * the {@code k} nearest neighbours of the given vector, scoring ranges of blocks on different threads
+     *
+     * @param query    the query vector, which does not need to be normalized
+     * @param k        the number of neighbours
+     * @param executor the executor running the scoring tasks
+     * @param threads  the number of scoring tasks
+     * @return the neighbours, by decreasing similarity
+     * @throws IOException if a scoring task fails
+     */
+    public List<Neighbour> search(float[] query, int k, ExecutorService executor, int threads) throws IOException {
+        float[][] queries = new float[][]{normalized(query)};
+        int blocksPerTask = Math.max(1, (blocks.length + threads - 1) / threads);
+        List<Future<TopK>> futures = new ArrayList<>();
+        for (int from = 0; from < blocks.length; from += blocksPerTask) {
+            int start = from;
+            int end = Math.min(blocks.length, from + blocksPerTask);
+            futures.add(executor.submit(() -> {
+                TopK topK = new TopK(k);
+                score(queries, new TopK[]{topK}, start, end);
+                return topK;
+            }));
+        }
+        TopK merged = new TopK(k);
+        for (Future<TopK> future : futures) {
+            merged.addAll(ParallelParser.await(future));
+        }
+        return merged.toNeighbours(tokens);
+    }
+
+    /**
+     * the {@code k} nearest neighbours of each of the given vectors, scoring batches of queries on different threads
+     *
+     * @param queries  the query vectors
+     * @param k        the number of neighbours
+     * @param executor the executor running the scoring tasks
+     * @return the neighbours of each query, by decreasing similarity
+     * @throws IOException if a scoring task fails
+     */
+    public List<List<Neighbour>> search(List<float[]> queries, int k, ExecutorService executor) throws IOException {
+        List<Future<TopK[]>> futures = new ArrayList<>();
+        for (int from = 0; from < queries.size(); from += QUERY_BATCH) {
+            float[][] batch = new float[Math.min(QUERY_BATCH, queries.size() - from)][];
+            for (int q = 0; q < batch.length; q++) {
+                batch[q] = normalized(queries.get(from + q));
+            }
+            futures.add(executor.submit(() -> {
+                TopK[] topKs = new TopK[batch.length];
+                for (int q = 0; q < topKs.length; q++) {
+                    topKs[q] = new TopK(k);
+                }
+                score(batch, topKs, 0, blocks.length);
+                return topKs;
+            }));
+        }
+        List<List<Neighbour>> results = new ArrayList<>(queries.size());
+        for (Future<TopK[]> future : futures) {
+            for (TopK topK : ParallelParser.await(future)) {
+                results.add(topK.toNeighbours(tokens));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * the exact {@code k} nearest neighbours of each of the given vectors, in a single pass over the rows of a table,
+     * which are normalized one at a time, so that only the tokens of the neighbours are kept in memory; neighbours are
+     * the same, and in the same order, as the ones of a search over the same table
+     *
+     * @param table   the table
+     * @param queries the query vectors
+     * @param k       the number of neighbours
+     * @return the neighbours of each query, by decreasing similarity
+     */
+    public static List<List<Neighbour>> scan(WordVectorTable table, List<float[]> queries, int k) {
+        int dimension = table.dimension();
+        float[][] normalized = new float[queries.size()][];
+        TopK[] topKs = new TopK[queries.size()];
+        for (int q = 0; q < normalized.length; q++) {
+            if (queries.get(q).length != dimension) {
+                throw new IllegalArgumentException("wrong query dimension " + queries.get(q).length + " instead of "
+                        + dimension);
+            }
+            normalized[q] = Arrays.copyOf(queries.get(q), dimension);
+            VectorMath.normalize(normalized[q], 0, dimension);
+            topKs[q] = new TopK(k);
+        }
+        float[] row = new float[dimension];
+        Iterator<String> tokenIterator = table.tokens();
+        for (int r = 0; tokenIterator.hasNext(); r++) {
+            WordVector vector = table.get(tokenIterator.next());
+            for (int i = 0; i < dimension; i++) {
+                row[i] = vector.getAsFloat(i);
+            }
+            VectorMath.normalize(row, 0, dimension);
+            for (int q = 0; q < normalized.length; q++) {
+                topKs[q].add(r, VectorMath.dot(normalized[q], 0, row, 0, dimension));
+            }
+        }
+        // a second pass over the tokens resolves the rows of the neighbours
+        Map<Integer, String> tokens = new HashMap<>();
+        for (TopK topK : topKs) {
+            for (int i = 0; i < topK.size; i++) {
+                tokens.put(topK.rows[i], null);
+            }
+        }
+        tokenIterator = table.tokens();
+        for (int r = 0; tokenIterator.hasNext(); r++) {
+            tokens.replace(r, tokenIterator.next());
+        }
+        List<List<Neighbour>> results = new ArrayList<>(topKs.length);
+        for (TopK topK : topKs) {
+            results.add(topK.toNeighbours(tokens::get));
+        }
+        return results;
+    }
+
+    private void score(float[][] queries, TopK[] topKs, int fromBlock, int toBlock) {
+        for (int block = fromBlock; block < toBlock; block++) {
+            float[] data = blocks[block];
+            int rows = data.length / dimension;
+            int firstRow = block * BLOCK_ROWS;
+            for (int q = 0; q < queries.length; q++) {
+                float[] query = queries[q];
+                TopK topK = topKs[q];
+                for (int r = 0, offset = 0; r < rows; r++, offset += dimension) {
+                    topK.add(firstRow + r, dot(query, data, offset));
+                }
+            }
+        }
+    }
+
+    private float dot(float[] query, float[] data, int offset) {
+        return VectorMath.dot(query, 0, data, offset, dimension);
+    }
+
+    private float[] normalized(float[] query) {
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("wrong query dimension " + query.length + " instead of " + dimension);
+        }
+        float[] normalized = Arrays.copyOf(query, dimension);
+        VectorMath.normalize(normalized, 0, dimension);
+        return normalized;
+    }
+
+    @Override
+    public String toString() {
+        return "NearestNeighbourSearch{" + "dimension=" + dimension + ", size=" + size + '}';
+    }
+
+    /**
+     * a neighbour of a query, with its cosine similarity
+     */
+    public static class Neighbour {
+
+        private final String token;
+        private final float score;
+
+        Neighbour(String token, float score) {
+            this.token = token;
+            this.score = score;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public float getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return token + "=" + score;
+        }
+    }
+
+    /**
+     * bounded min heap of the best scoring rows, ties are broken in favour of the lowest row
+     */
+    static class TopK {
+
+        private final int k;
+        private final int[] rows;
+        private final float[] scores;
+        private int size;
+
+        TopK(int k) {
+            this.k = k;
+            this.rows = new int[k];
+            this.scores = new float[k];
+        }
+
+        void add(int row, float score) {
+            if (size < k) {
+                rows[size] = row;
+                scores[size] = score;
+                up(size++);
+            } else if (k > 0 && worse(rows[0], scores[0], row, score)) {
+                rows[0] = row;
+                scores[0] = score;
+                down(0);
+            }
+        }
+
+        void addAll(TopK other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.rows[i], other.scores[i]);
+            }
+        }
+
+        /**
+         * @return the rows as neighbours, by decreasing score
+         */
+        List<Neighbour> toNeighbours(String[] tokens) {
+            return toNeighbours(row -> tokens[row]);
+        }
+
+        /**
+         * @return the rows as neighbours, by decreasing score
+         */
+        List<Neighbour> toNeighbours(IntFunction<String> tokens) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> worse(rows[a], scores[a], rows[b], scores[b]) ? 1 : (a.equals(b) ? 0 : -1));
+            List<Neighbour> neighbours = new ArrayList<>(size);
+            for (int i : order) {
+                neighbours.add(new Neighbour(tokens.apply(rows[i]), scores[i]));
+            }
+            return neighbours;
+        }
+
+        private static boolean worse(int row, float score, int otherRow, float otherScore) {
+            return score < otherScore || (score == otherScore && row > otherRow);
+        }
+
+        private void up(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!worse(rows[i], scores[i], rows[parent], scores[parent])) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void down(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                int worst = left;
+                int right = left + 1;
+                if (right < size && worse(rows[right], scores[right], rows[left], scores[left])) {
+                    worst = right;
+                }
+                if (!worse(rows[worst], scores[worst], rows[i], scores[i])) {
+                    break;
+                }
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int row = rows[i];
+            rows[i] = rows[j];
+            rows[j] = row;
+            float score = scores[i];
+            scores[i] = scores[j];
+            scores[j] = score;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.cmdline.parser.ParserTool;
+import opennlp.tools.parser.Parse;
+import opennlp.tools.parser.ParserModel;
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.sentdetect.SentenceModel;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Detects and parses sentences on a pool of worker threads.
+ * <p>
+ * {@link SentenceDetectorME} and {@link BoundedParser} are not thread safe, so each worker thread lazily creates its
+ * own instances, all sharing the same (immutable) {@link SentenceModel} and {@link ParserModel}.
+ * Lines are submitted to the executor's shared queue, at most {@code window} of them being in flight at any time, and
+ * parsed sentences are handed to the consumer, on the calling thread, in input order; therefore the outcome does not
+ * depend on the number of threads used. Exact duplicate sentences, detected by their {@link SentenceHash}, are only
+ * handed over once. Sentences over the limits of the {@link BoundedParser} get a shallow tree, or are skipped, and are
+ * counted by {@link BoundedParser.Outcome}; as parses time out depending on the load of the machine, the outcome only
+ * depends on the input when there is no parsing timeout.
+ */
+class ParallelParser {
+
+    private final ExecutorService executor;
+    private final int window;
+    private final ThreadLocal<SentenceDetectorME> sentenceDetectors;
+    private final ThreadLocal<BoundedParser> parsers;
+    private final long[] outcomes = new long[BoundedParser.Outcome.values().length];
+
+    ParallelParser(SentenceModel sentenceModel, ParserModel parserModel, ExecutorService executor, int threads) {
+        this.executor = executor;
+        this.window = threads * 16;
+        this.sentenceDetectors = ThreadLocal.withInitial(() -> new SentenceDetectorME(sentenceModel));
+        this.parsers = ThreadLocal.withInitial(() -> new BoundedParser(parserModel,
+                BoundedParser.MAX_TOKENS, BoundedParser.TIMEOUT_NANOS, BoundedParser.MAX_FALLBACK_TOKENS));
+    }
+
+    /**
+     * detect and parse all the sentences from the given lines, skipping the ones which have already been seen
+     * <p>
+     * The hashes of the sentences are added to {@code seen} in input order, on the calling thread, so that only the
+     * first occurrence of a sentence is handed to the consumer. Workers skip parsing the sentences whose hash is already
+     * there, i.e. the duplicates of sentences which precede them by more than the lines in flight.
+     *
+     * @param lines    the lines of text to parse
+     * @param seen     the hashes of the sentences seen so far, which is updated with the new ones
+     * @param consumer the consumer of the parsed sentences
+     * @return the number of duplicate sentences which have been skipped
+     * @throws IOException if the consumer fails
+     */
+    long parse(CorpusReader.Lines lines, Set<SentenceHash> seen, ParsedSentenceConsumer consumer) throws IOException {
+        Deque<Future<List<ParsedSentence>>> pending = new ArrayDeque<>();
+        long duplicates = 0;
+        while (lines.hasNext()) {
+            String line = lines.next();
+            String source = lines.getFile().getPath();
+            long lineNumber = lines.getLineNumber();
+            pending.add(executor.submit(() -> parseLine(line, source, lineNumber, seen)));
+            if (pending.size() >= window) {
+                duplicates += consume(pending.poll(), seen, consumer);
+            }
+        }
+        while (!pending.isEmpty()) {
+            duplicates += consume(pending.poll(), seen, consumer);
+        }
+        return duplicates;
+    }
+
+    private List<ParsedSentence> parseLine(String line, String source, long lineNumber, Set<SentenceHash> seen) {
+        // todo : normalize text, eventually
+        long start = Parse2VecMetrics.ENABLED ? System.nanoTime() : 0;
+        String[] sentences = sentenceDetectors.get().sentDetect(line);
+        if (Parse2VecMetrics.ENABLED) {
+            Parse2VecMetrics.METRICS.count(Parse2VecMetrics.Counter.LINES, 1);
+            Parse2VecMetrics.METRICS.items(Parse2VecMetrics.Stage.SENTENCE_DETECTION, System.nanoTime() - start, sentences.length);
+        }
+        List<ParsedSentence> parsedSentences = new ArrayList<>(sentences.length);
+        BoundedParser parser = parsers.get();
+        for (String sentence : sentences) {
+            SentenceHash hash = SentenceHash.of(sentence);
+            Parse[] parses = null;
+            BoundedParser.Outcome outcome = null;
+            if (!seen.contains(hash)) {
+                start = Parse2VecMetrics.ENABLED ? System.nanoTime() : 0;
+                parses = ParserTool.parseLine(sentence, parser, 1);
+                outcome = parser.getOutcome();
+                if (outcome == BoundedParser.Outcome.SKIPPED) {
+                    parses = new Parse[0];
+                }
+                if (Parse2VecMetrics.ENABLED) {
+                    Parse2VecMetrics.METRICS.parsed(System.nanoTime() - start);
+                }
+            }
+            parsedSentences.add(new ParsedSentence(sentence, parses, source, lineNumber, hash, outcome));
+        }
+        return parsedSentences;
+    }
+
+    private long consume(Future<List<ParsedSentence>> future, Set<SentenceHash> seen,
+                         ParsedSentenceConsumer consumer) throws IOException {
+        long duplicates = 0;
+        for (ParsedSentence parsedSentence : await(future)) {
+            if (seen.add(parsedSentence.getHash())) {
+                assert parsedSentence.getParses() != null : "unparsed first occurrence of " + parsedSentence.getSentence();
+                outcomes[parsedSentence.getOutcome().ordinal()]++;
+                if (parsedSentence.getOutcome() != BoundedParser.Outcome.SKIPPED) {
+                    consumer.accept(parsedSentence);
+                }
+            } else {
+                duplicates++;
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * @return the number of (first occurrences of) sentences parsed so far with the given outcome
+     */
+    long count(BoundedParser.Outcome outcome) {
+        return outcomes[outcome.ordinal()];
+    }
+
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for a worker", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    interface ParsedSentenceConsumer {
+        void accept(ParsedSentence parsedSentence) throws IOException;
+    }
+}
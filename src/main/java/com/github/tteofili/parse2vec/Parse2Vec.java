@@ -1,18 +1,13 @@
 package com.github.tteofili.parse2vec;
 
-import opennlp.tools.parser.Parser;
-import opennlp.tools.parser.ParserFactory;
+import com.github.tteofili.parse2vec.Parse2VecMetrics.Counter;
+import com.github.tteofili.parse2vec.Parse2VecMetrics.Stage;
+import opennlp.tools.parser.Parse;
 import opennlp.tools.parser.ParserModel;
-import opennlp.tools.sentdetect.SentenceDetectorME;
 import opennlp.tools.sentdetect.SentenceModel;
-import opennlp.tools.util.wordvector.WordVector;
-import org.apache.commons.io.IOUtils;
-import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
-import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+import opennlp.tools.util.wordvector.WordVectorTable;
 import org.deeplearning4j.models.word2vec.Word2Vec;
-import org.deeplearning4j.text.documentiterator.FileDocumentIterator;
 import org.deeplearning4j.text.tokenization.tokenizerfactory.TokenizerFactory;
-import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,22 +18,83 @@ import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.stream.DoubleStream;
-import java.util.stream.IntStream;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Basic runner for parse2vec over a directory of text files
  */
 public class Parse2Vec {
 
-    enum Method {
+    public enum Method {
         CLUSTER,
         SUM
     }
 
+    private static final String SENTENCE_MODEL = "src/main/resources/en-sent.bin";
+    static final String PARSER_MODEL = "src/main/resources/en-parser-chunking.bin";
+
+    /**
+     * number of worker threads used for parsing and sentence embedding, defaults to the number of available cores
+     */
+    static final int THREADS = Integer.getInteger("parse2vec.threads", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * charset of the input files, defaults to UTF-8
+     */
+    static final Charset CHARSET = Charset.forName(System.getProperty("parse2vec.charset", "UTF-8"));
+
+    /**
+     * whether to build an approximate nearest neighbour index of the sentence embeddings
+     */
+    private static final boolean HNSW = Boolean.getBoolean("parse2vec.hnsw");
+
+    /**
+     * whether to checkpoint the state of the run and, when a checkpoint exists, only add the files which are not in it
+     */
+    private static final boolean INCREMENTAL = Boolean.getBoolean("parse2vec.incremental");
+
+    /**
+     * pre-trained word vectors to use instead of training Word2Vec over the corpus, if any
+     */
+    private static final String WORD_VECTORS = System.getProperty("parse2vec.wordVectors");
+
+    /**
+     * whether to train Word2Vec while the corpus is parsed, instead of before
+     */
+    private static final boolean PIPELINED = Boolean.getBoolean("parse2vec.pipelined");
+
+    /**
+     * whether to index the sentences, and their embeddings, in a Lucene index ({@code pt-sentence-index})
+     */
+    static final boolean LUCENE_INDEX = Boolean.getBoolean("parse2vec.luceneIndex");
+
+    /**
+     * whether to quantize (to int8 and product quantized codes) the pt-word and pt-sentence embeddings
+     */
+    private static final boolean QUANTIZE = Boolean.getBoolean("parse2vec.quantize");
+
+    /**
+     * the maximum number of sentence embeddings waiting to be written out
+     */
+    private static final int SINK_CAPACITY = Integer.getInteger("parse2vec.sink.capacity", 1024);
+
     private static Logger logger = LoggerFactory.getLogger(Parse2Vec.class);
 
     public static void main(String[] args) throws Exception {
@@ -47,155 +103,570 @@ public class Parse2Vec {
             throw new Exception("please privide an input text to train the parse2vec models");
         }
 
+        if (Parse2VecMetrics.ENABLED) {
+            Parse2VecMetrics.METRICS.register();
+        }
         Path path = Paths.get(args[0]);
+        CorpusReader corpusReader = new CorpusReader(path.toFile(), CHARSET);
+        int layerSize = args.length > 1 && args[1] != null ? Integer.parseInt(args[1]) : 100;
+        LuceneTokenizerFactory tokenizerFactory = new LuceneTokenizerFactory(AnalysisUtils.simpleAnalyzer());
 
-        InputStream sentenceModelStream = new FileInputStream("src/main/resources/en-sent.bin");
-        InputStream parserModelStream = new FileInputStream("src/main/resources/en-parser-chunking.bin");
-        try {
-
-            // train word embeddings
-            int layerSize = args.length > 1 && args[1] != null ? Integer.parseInt(args[1]) : 100;
-            LuceneTokenizerFactory tokenizerFactory = new LuceneTokenizerFactory(AnalysisUtils.simpleAnalyzer());
-            Word2Vec word2Vec = new Word2Vec.Builder()
-                    .tokenizerFactory(tokenizerFactory)
-                    .epochs(10)
-                    .layerSize(layerSize)
-                    .iterate(new FileDocumentIterator(path.toFile()))
-                    .build();
-            word2Vec.fit();
+        WordVectorTable wordVectors = null;
+        long start;
+        if (WORD_VECTORS != null) {
+            wordVectors = loadWordVectors(new File(WORD_VECTORS));
+            if (args.length > 1 && layerSize != wordVectors.dimension()) {
+                logger.warn("ignoring layer size {}, the word vectors have {} dimensions", layerSize,
+                        wordVectors.dimension());
+            }
+            layerSize = wordVectors.dimension();
+        }
 
-            EmbeddingsUtils.writeEmbeddingsAsSSV(word2Vec.getLookupTable(), "plain", 3);
+        File checkpointFile = new File(TrainingCheckpoint.DEFAULT_FILE_NAME);
+        File savedWordVectorsFile = new File(TrainingCheckpoint.WORD_VECTORS_FILE_NAME);
+        TrainingCheckpoint checkpoint = INCREMENTAL ? TrainingCheckpoint.read(checkpointFile) : null;
+        if (checkpoint != null && (checkpoint.getLayerSize() != layerSize
+                || (wordVectors == null && !savedWordVectorsFile.exists()))) {
+            logger.warn("cannot resume from {} with layer size {}, processing the whole corpus", checkpoint, layerSize);
+            checkpoint = null;
+        }
 
-            SentenceModel sentenceModel = new SentenceModel(sentenceModelStream);
-            SentenceDetectorME sentenceDetector = new SentenceDetectorME(sentenceModel);
+        List<File> files = corpusReader.getFiles();
+        ExecutorService trainer = null;
+        Future<WordVectorTable> training = null;
+        if (checkpoint == null) {
+            if (wordVectors == null && PIPELINED) {
+                // parsing does not need the word vectors, so Word2Vec trains on its own thread while the corpus is parsed
+                CorpusReader trainingCorpusReader = corpusReader;
+                int trainingLayerSize = layerSize;
+                trainer = newExecutor("parse2vec-word2vec-", 1);
+                training = trainer.submit(() -> trainWordVectors(trainingCorpusReader, trainingLayerSize,
+                        tokenizerFactory));
+            } else if (wordVectors == null) {
+                wordVectors = trainWordVectors(corpusReader, layerSize, tokenizerFactory);
+            }
+        } else {
+            files = checkpoint.newFiles(files);
+            if (files.isEmpty()) {
+                logger.info("no new files to add to {}", checkpoint);
+                return;
+            }
+            logger.info("adding {} new files to {}", files.size(), checkpoint);
+            if (wordVectors == null) {
+                // the word embeddings (and their vocabulary) are the ones of the first run
+                wordVectors = loadWordVectors(savedWordVectorsFile);
+            }
+            corpusReader = new CorpusReader(files, CHARSET);
+        }
 
-            ParserModel parserModel = new ParserModel(parserModelStream);
-            Parser parser = ParserFactory.create(parserModel);
+        ExecutorService executor = newExecutor(THREADS);
+        try {
+            if (!files.isEmpty()) {
+                // detect and parse sentences once, all the embedding passes stream the stored trees
+                ParseTreeStore parseTreeStore = new ParseTreeStore(new File(ParseTreeStore.DEFAULT_FILE_NAME));
+                SentenceMetadata sentenceMetadata = new SentenceMetadata(SentenceMetadata.DEFAULT_PREFIX);
+                String fingerprint = ParseTreeStore.fingerprint(files, new File(PARSER_MODEL));
+                if (parseTreeStore.isValid(fingerprint) && sentenceMetadata.exists()) {
+                    logger.info("reusing parse trees from {}", parseTreeStore.getFile());
+                } else {
+                    start = System.nanoTime();
+                    // sentence ids follow the ones of the sentences of the previous runs
+                    parseCorpus(corpusReader, parseTreeStore, fingerprint, sentenceMetadata,
+                            checkpoint != null ? checkpoint.getSentences() : 0, executor);
+                    if (Parse2VecMetrics.ENABLED) {
+                        Parse2VecMetrics.METRICS.pass(Stage.PARSING, System.nanoTime() - start);
+                    }
+                }
 
-            File dir = path.toFile();
+                if (training != null) {
+                    // the embedding passes start as soon as the word vectors are ready
+                    start = System.nanoTime();
+                    wordVectors = ParallelParser.await(training);
+                    logger.info("waited {}ms for the word vectors", (System.nanoTime() - start) / 1000000);
+                }
 
-            if (dir.listFiles() != null) {
-                MapWordVectorTable ptEmbeddings = extractPTEmbeddings(layerSize, word2Vec, sentenceDetector, parser, dir, tokenizerFactory);
-                ptEmbeddings = normalize(ptEmbeddings);
+                VectorAccumulator ptAccumulator = accumulatePTEmbeddings(layerSize, wordVectors, parseTreeStore,
+                        tokenizerFactory, executor);
+                if (checkpoint != null) {
+                    ptAccumulator = merge(Arrays.asList(checkpoint.getPTTags(), ptAccumulator), layerSize);
+                }
+                DenseWordVectorTable ptEmbeddings = ptAccumulator.means();
+                ptEmbeddings.normalize();
                 checkEmbeddings(ptEmbeddings, layerSize);
-                EmbeddingsUtils.writeEmbeddingsAsTSV(ptEmbeddings, "pt-tag", 1);
-                EmbeddingsUtils.writeEmbeddingsAsSSV(ptEmbeddings, "pt-tag", 3);
+                start = System.nanoTime();
+                EmbeddingsExporter.writeEmbeddings(ptEmbeddings, "pt-tag", 3, 1, executor, THREADS);
+                BinaryEmbeddings.writeEmbeddingsAsBinary(ptEmbeddings, "pt-tag");
+                output(start, ptEmbeddings.size());
 
-                MapWordVectorTable parsePathWordEmbeddings = extractPTPathWordEmbeddings(word2Vec, sentenceDetector, parser,
-                        dir, ptEmbeddings, tokenizerFactory);
-                parsePathWordEmbeddings = normalize(parsePathWordEmbeddings);
+                // the words are accumulated with the tags of their ancestors rather than with the embeddings of those
+                // tags, so that the words of previous runs are enriched with the current parse tree embeddings too
+                PathWordAccumulator pathWords = accumulatePTPathTags(layerSize, wordVectors, parseTreeStore,
+                        tokenizerFactory, executor);
+                if (checkpoint != null) {
+                    pathWords.merge(checkpoint.getPathWords());
+                }
+                DenseWordVectorTable parsePathWordEmbeddings = pathWords.means(ptEmbeddings);
+                parsePathWordEmbeddings.normalize();
                 checkEmbeddings(ptEmbeddings, layerSize);
                 checkEmbeddings(parsePathWordEmbeddings, layerSize);
-                EmbeddingsUtils.writeEmbeddingsAsTSV(parsePathWordEmbeddings, "pt-word", 1);
-                EmbeddingsUtils.writeEmbeddingsAsSSV(parsePathWordEmbeddings, "pt-word", 3);
+                start = System.nanoTime();
+                EmbeddingsExporter.writeEmbeddings(parsePathWordEmbeddings, "pt-word", 3, 1, executor, THREADS);
+                BinaryEmbeddings.writeEmbeddingsAsBinary(parsePathWordEmbeddings, "pt-word");
+                output(start, parsePathWordEmbeddings.size());
+                if (QUANTIZE) {
+                    quantize(parsePathWordEmbeddings, "pt-word", executor);
+                }
 
-                MapWordVectorTable parsePathSentenceEmbeddings = extractPTPathSentenceEmbeddings(sentenceDetector,
-                        parser, dir, ptEmbeddings, parsePathWordEmbeddings, 3, Method.CLUSTER, layerSize, tokenizerFactory);
-                checkEmbeddings(ptEmbeddings, layerSize);
-                checkEmbeddings(parsePathWordEmbeddings, layerSize);
-                checkEmbeddings(parsePathSentenceEmbeddings, layerSize);
-                EmbeddingsUtils.writeEmbeddingsAsTSV(parsePathSentenceEmbeddings, "pt-sentence", 1);
-                EmbeddingsUtils.writeEmbeddingsAsSSV(parsePathSentenceEmbeddings, "pt-sentence", 3);
-            }
+                // sentence embeddings are written out while the next ones are computed, rather than held in memory;
+                // in incremental runs they are appended to the outputs of the previous runs
+                int sentences;
+                try (EmbeddingsSink sentenceSink = newSentenceSink("pt-sentence", layerSize, checkpoint != null,
+                        LUCENE_INDEX ? sentenceMetadata : null)) {
+                    sentences = extractPTPathSentenceEmbeddings(parseTreeStore, ptEmbeddings, parsePathWordEmbeddings,
+                            3, Method.CLUSTER, layerSize, tokenizerFactory, executor, sentenceSink);
+                    start = System.nanoTime();
+                }
+                output(start, sentences);
+                if (checkpoint != null) {
+                    logger.info("appended {} new sentences", sentences);
+                }
+                if (HNSW) {
+                    indexSentences(BinaryEmbeddings.open(Paths.get("pt-sentence-vectors.bin")), checkpoint != null,
+                            executor);
+                }
+                if (QUANTIZE) {
+                    quantize(BinaryEmbeddings.open(Paths.get("pt-sentence-vectors.bin")), "pt-sentence", executor);
+                }
 
+                if (INCREMENTAL) {
+                    Map<String, Long> processedFiles = new LinkedHashMap<>();
+                    if (checkpoint != null) {
+                        processedFiles.putAll(checkpoint.getFiles());
+                    }
+                    processedFiles.putAll(TrainingCheckpoint.fileStates(files));
+                    new TrainingCheckpoint(layerSize, processedFiles, sentenceMetadata.size(), ptAccumulator,
+                            pathWords).write(checkpointFile);
+                }
+            }
         } finally {
-            sentenceModelStream.close();
-            parserModelStream.close();
+            executor.shutdownNow();
+            if (trainer != null) {
+                trainer.shutdownNow();
+            }
+        }
+        if (Parse2VecMetrics.ENABLED) {
+            Parse2VecMetrics.METRICS.write(new File("pt-metrics.json"));
+        }
+    }
+
+    /**
+     * train Word2Vec over the corpus, saving the word embeddings as text ({@code plain-vectors.txt}) and in the
+     * binary format ({@code plain-vectors.bin}), which can be passed to later runs with
+     * {@code -Dparse2vec.wordVectors=...}
+     *
+     * @return the memory mapped binary word embeddings
+     */
+    private static WordVectorTable trainWordVectors(CorpusReader corpusReader, int layerSize,
+                                                    TokenizerFactory tokenizerFactory) throws IOException {
+        Word2Vec word2Vec = new Word2Vec.Builder()
+                .tokenizerFactory(tokenizerFactory)
+                .epochs(Integer.getInteger("parse2vec.word2vec.epochs", 10))
+                .workers(Integer.getInteger("parse2vec.word2vec.workers", THREADS))
+                .minWordFrequency(Integer.getInteger("parse2vec.word2vec.minWordFrequency", 0))
+                .batchSize(Integer.getInteger("parse2vec.word2vec.batchSize", 512))
+                .layerSize(layerSize)
+                .iterate(corpusReader.sentenceIterator())
+                .build();
+        long start = System.nanoTime();
+        word2Vec.fit();
+        if (Parse2VecMetrics.ENABLED) {
+            Parse2VecMetrics.METRICS.pass(Stage.WORD2VEC, System.nanoTime() - start);
+            Parse2VecMetrics.METRICS.items(Stage.WORD2VEC, 0, word2Vec.getVocab().numWords());
+        }
+
+        start = System.nanoTime();
+        EmbeddingsUtils.writeEmbeddingsAsSSV(word2Vec.getLookupTable(), "plain", 3);
+        BinaryEmbeddings.writeEmbeddingsAsBinary(new Word2VecWordVectorTable(word2Vec), "plain");
+        output(start, word2Vec.getVocab().numWords());
+        return BinaryEmbeddings.open(Paths.get(TrainingCheckpoint.WORD_VECTORS_FILE_NAME));
+    }
+
+    private static WordVectorTable loadWordVectors(File file) throws IOException {
+        long start = System.nanoTime();
+        WordVectorTable wordVectors = EmbeddingsUtils.loadWordVectors(file);
+        logger.info("loaded {} word vectors of dimension {} from {} in {}ms", wordVectors.size(),
+                wordVectors.dimension(), file, (System.nanoTime() - start) / 1000000);
+        if (Parse2VecMetrics.ENABLED) {
+            Parse2VecMetrics.METRICS.pass(Stage.WORD2VEC, System.nanoTime() - start);
+            Parse2VecMetrics.METRICS.items(Stage.WORD2VEC, 0, wordVectors.size());
+        }
+        return wordVectors;
+    }
+
+    private static void output(long start, int rows) {
+        if (Parse2VecMetrics.ENABLED) {
+            Parse2VecMetrics.METRICS.pass(Stage.OUTPUT, System.nanoTime() - start);
+            Parse2VecMetrics.METRICS.items(Stage.OUTPUT, 0, rows);
+        }
+    }
+
+    /**
+     * time each sentence processed by the given consumer as an item of the given stage
+     */
+    private static Consumer<ParsedSentence> timed(Stage stage, Consumer<ParsedSentence> consumer) {
+        if (!Parse2VecMetrics.ENABLED) {
+            return consumer;
+        }
+        return parsedSentence -> {
+            long start = System.nanoTime();
+            consumer.accept(parsedSentence);
+            processed(stage, System.nanoTime() - start);
+        };
+    }
+
+    /**
+     * time each sentence processed by the given function as an item of the given stage
+     */
+    private static <T> Function<ParsedSentence, T> timedFunction(Stage stage, Function<ParsedSentence, T> function) {
+        if (!Parse2VecMetrics.ENABLED) {
+            return function;
+        }
+        return parsedSentence -> {
+            long start = System.nanoTime();
+            T result = function.apply(parsedSentence);
+            processed(stage, System.nanoTime() - start);
+            return result;
+        };
+    }
+
+    private static void processed(Stage stage, long nanos) {
+        if (stage == Stage.PT_SENTENCE_EMBEDDINGS) {
+            Parse2VecMetrics.METRICS.sentenceEmbedded(nanos);
+        } else {
+            Parse2VecMetrics.METRICS.items(stage, nanos, 1);
+        }
+    }
+
+    static ExecutorService newExecutor(int threads) {
+        return newExecutor("parse2vec-worker-", threads);
+    }
+
+    private static ExecutorService newExecutor(String namePrefix, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, namePrefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * quantize an embedding table to int8 ({@code <prefix>-int8.bin}) and product quantized ({@code <prefix>-pq.bin})
+     * codes, logging their size, reconstruction error and nearest neighbour recall against exact search
+     */
+    private static void quantize(WordVectorTable table, String prefix, ExecutorService executor) throws IOException {
+        if (table.size() == 0) {
+            return;
+        }
+        int subspaces = Integer.getInteger("parse2vec.pq.subspaces", Math.max(1, table.dimension() / 4));
+        int iterations = Integer.getInteger("parse2vec.pq.iterations", 10);
+        int sampleSize = Integer.getInteger("parse2vec.pq.sample", 16384);
+        long start = System.currentTimeMillis();
+        QuantizedEmbeddings int8 = ScalarQuantizedEmbeddings.quantize(table);
+        int8.write(new File(prefix + "-int8.bin"));
+        QuantizedEmbeddings pq = ProductQuantizedEmbeddings.quantize(table, Math.min(subspaces, table.dimension()),
+                iterations, sampleSize, 42, executor, THREADS);
+        pq.write(new File(prefix + "-pq.bin"));
+        logger.info("quantized {} {} embeddings in {}ms", table.size(), prefix, System.currentTimeMillis() - start);
+
+        List<float[]> queries = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < Math.min(100, table.size()); i++) {
+            float[] query = new float[table.dimension()];
+            table.get(int8.token(random.nextInt(table.size()))).toFloatBuffer().get(query);
+            queries.add(query);
+        }
+        // the (possibly memory mapped) table is scanned once for all the queries, rather than copied to the heap
+        List<List<NearestNeighbourSearch.Neighbour>> exact = NearestNeighbourSearch.scan(table, queries, 10);
+        double floatBytes = 4d * table.size() * table.dimension();
+        for (QuantizedEmbeddings quantized : Arrays.asList(int8, pq)) {
+            logger.info("{}: {} bytes ({}x compression), reconstruction error={}, recall@10={}", quantized,
+                    quantized.codeBytes(), String.format("%.1f", floatBytes / quantized.codeBytes()),
+                    quantized.reconstructionError(table), quantized.recall(exact, queries, 10));
         }
     }
 
-    private static MapWordVectorTable normalize(MapWordVectorTable embeddings) {
-        MapWordVectorTable normalizedEmbeddings = new MapWordVectorTable(new HashMap<>());
-        Iterator<String> tokens = embeddings.tokens();
-        while (tokens.hasNext()) {
-            String row = tokens.next();
-            double[] array = embeddings.get(row).toDoubleBuffer().array();
-            double sum = 0;
-            for (double d : array) {
-                sum += Math.pow(d, 2);
+    /**
+     * build and save the HNSW index of the sentence embeddings, logging its recall against exact search; when the
+     * embeddings have been appended to the ones of a previous run, its index is loaded and only the new sentences are
+     * inserted
+     */
+    private static void indexSentences(MappedWordVectorTable sentenceEmbeddings, boolean appended,
+                                       ExecutorService executor) throws IOException {
+        int m = Integer.getInteger("parse2vec.hnsw.m", 16);
+        int efConstruction = Integer.getInteger("parse2vec.hnsw.efConstruction", 200);
+        long start = System.currentTimeMillis();
+        HnswIndex index = null;
+        if (appended && new File("pt-sentence-hnsw.bin").exists()) {
+            index = HnswIndex.load("pt-sentence", efConstruction, 42);
+            int indexed = index.size();
+            if (index.m() != m || index.dimension() != sentenceEmbeddings.dimension()
+                    || indexed > sentenceEmbeddings.size()
+                    || (indexed > 0 && !index.token(indexed - 1).equals(sentenceEmbeddings.token(indexed - 1)))) {
+                logger.warn("cannot extend {}, indexing all the sentences", index);
+                index = null;
             }
-            sum = Math.sqrt(sum);
-            double finalSum = sum;
-            double[] normalized = DoubleStream.of(array).map(p -> p / finalSum).toArray();
-            normalizedEmbeddings.put(row, new FloatArrayVector(normalized));
-        }
-        return normalizedEmbeddings;
-    }
-
-    private static void checkEmbeddings(MapWordVectorTable embeddings, int layerSize) {
-        Iterator<String> tokens = embeddings.tokens();
-        while (tokens.hasNext()) {
-            String next = tokens.next();
-            WordVector wordVector = embeddings.get(next);
-            assert wordVector.dimension() == layerSize;
-            if (wordVector.dimension() != layerSize) {
-                logger.error("wrong dimension {} for token {} instead of {}", wordVector.dimension(), next, layerSize);
-                float[] vector = new float[layerSize];
-                Arrays.fill(vector, 1e-10f);
-                embeddings.put(next, new FloatArrayVector(vector));
+        }
+        if (index == null) {
+            index = new HnswIndex(sentenceEmbeddings.dimension(), m, efConstruction, 42);
+        }
+        int indexed = index.size();
+        index.addAll(sentenceEmbeddings, indexed, executor, THREADS);
+        index.save("pt-sentence");
+        logger.info("indexed {} new sentences ({} in total) in {}ms", index.size() - indexed, index.size(),
+                System.currentTimeMillis() - start);
+
+        List<float[]> queries = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < Math.min(100, index.size()); i++) {
+            queries.add(index.vector(random.nextInt(index.size())));
+        }
+        // the (memory mapped) embeddings are scanned once for all the queries, rather than copied to the heap
+        start = System.nanoTime();
+        List<List<NearestNeighbourSearch.Neighbour>> exact = NearestNeighbourSearch.scan(sentenceEmbeddings, queries, 10);
+        logger.info("exact search: {}us per query", (System.nanoTime() - start) / 1000 / Math.max(1, queries.size()));
+        for (int ef : new int[]{10, 50, 100, 200}) {
+            start = System.nanoTime();
+            double recall = index.recall(exact, queries, 10, ef);
+            logger.info("efSearch={}: recall@10={} ({}us per query)", ef, recall,
+                    (System.nanoTime() - start) / 1000 / Math.max(1, queries.size()));
+        }
+    }
+
+    static void parseCorpus(CorpusReader corpusReader, ParseTreeStore parseTreeStore, String fingerprint,
+                                    SentenceMetadata sentenceMetadata, int firstId, ExecutorService executor) throws IOException {
+        logger.info("parsing sentences into {} using {} threads", parseTreeStore.getFile(), THREADS);
+        SentenceModel sentenceModel;
+        try (InputStream sentenceModelStream = new FileInputStream(SENTENCE_MODEL)) {
+            sentenceModel = new SentenceModel(sentenceModelStream);
+        }
+        ParserModel parserModel;
+        try (InputStream parserModelStream = new FileInputStream(PARSER_MODEL)) {
+            parserModel = new ParserModel(parserModelStream);
+        }
+        ParallelParser parallelParser = new ParallelParser(sentenceModel, parserModel, executor, THREADS);
+        // exact duplicates, of the sentences of previous runs too, are only parsed and embedded once
+        Set<SentenceHash> seen = sentenceMetadata.hashes(firstId);
+        try (ParseTreeStore.Writer writer = parseTreeStore.writer(fingerprint)) {
+            long duplicates;
+            // the store is only valid once the metadata of all of its sentences is complete, i.e. its writer is closed
+            try (SentenceMetadata.Writer metadataWriter = sentenceMetadata.writer(firstId);
+                 CorpusReader.Lines lines = corpusReader.lines()) {
+                duplicates = parallelParser.parse(lines, seen, p -> writer.add(
+                        metadataWriter.add(p.getSource(), p.getLine(), p.getSentence(), p.getHash()), p.getSentence(),
+                        p.getParses()));
+            }
+            logger.info("skipped {} duplicate sentences", duplicates);
+            long tooLong = parallelParser.count(BoundedParser.Outcome.TOO_LONG);
+            long timedOut = parallelParser.count(BoundedParser.Outcome.TIMED_OUT);
+            long skipped = parallelParser.count(BoundedParser.Outcome.SKIPPED);
+            if (tooLong + timedOut + skipped > 0) {
+                logger.warn("shallow parsed {} sentences longer than {} tokens and {} taking longer than {}ms to parse, "
+                                + "skipped {} sentences longer than {} tokens", tooLong, BoundedParser.MAX_TOKENS,
+                        timedOut, BoundedParser.TIMEOUT_NANOS / 1000000, skipped, BoundedParser.MAX_FALLBACK_TOKENS);
             }
+            if (Parse2VecMetrics.ENABLED) {
+                Parse2VecMetrics.METRICS.count(Counter.DUPLICATE_SENTENCES, duplicates);
+                Parse2VecMetrics.METRICS.count(Counter.LONG_SENTENCES, tooLong);
+                Parse2VecMetrics.METRICS.count(Counter.TIMED_OUT_SENTENCES, timedOut);
+                Parse2VecMetrics.METRICS.count(Counter.SKIPPED_SENTENCES, skipped);
+            }
+            writer.commit();
+        }
+    }
+
+    private static void checkEmbeddings(WordVectorTable embeddings, int layerSize) {
+        assert embeddings.size() == 0 || embeddings.dimension() == layerSize;
+        if (embeddings.size() > 0 && embeddings.dimension() != layerSize) {
+            logger.error("wrong dimension {} for embeddings instead of {}", embeddings.dimension(), layerSize);
         }
     }
 
-    private static MapWordVectorTable extractPTPathSentenceEmbeddings(SentenceDetectorME sentenceDetector,
-                                                                      Parser parser, File dir, MapWordVectorTable ptEmbeddings,
-                                                                      MapWordVectorTable parsePathWordEmbeddings,
-                                                                      int k, Method method, int layerSize, TokenizerFactory tokenizerFactory) throws IOException {
+    /**
+     * embed the stored sentences, adding the vector of each of them to the given sink (keyed by sentence id, in
+     * sentence id order) as soon as it is computed
+     *
+     * @return the number of sentence vectors added to the sink
+     */
+    static int extractPTPathSentenceEmbeddings(ParseTreeStore parseTreeStore, WordVectorTable ptEmbeddings,
+                                               WordVectorTable parsePathWordEmbeddings,
+                                               int k, Method method, int layerSize, TokenizerFactory tokenizerFactory,
+                                               ExecutorService executor, EmbeddingsSink sink) throws IOException {
         logger.info("extracting parse tree enriched sentence embeddings");
-        MapWordVectorTable parsePathSentenceEmbeddings = new MapWordVectorTable(new HashMap<>());
-        for (File f : dir.listFiles()) {
-            if (!f.getName().startsWith(".")) {
-                logger.info("processing file {}", f);
-                for (String line : IOUtils.readLines(new FileInputStream(f), Charset.defaultCharset())) {
-                    String[] sentences = sentenceDetector.sentDetect(line);
-                    for (String sentence : sentences) {
-                        Parse2VecUtils.getPTPathSentenceEmbedding(parser, ptEmbeddings, parsePathWordEmbeddings, k,
-                                method, layerSize, parsePathSentenceEmbeddings, tokenizerFactory, sentence);
+        // sentences are embedded independently by the workers, the word and pt tables are only read
+        long start = System.nanoTime();
+        int[] added = new int[1];
+        forEachParsedSentence(parseTreeStore, executor, timedFunction(Stage.PT_SENTENCE_EMBEDDINGS,
+                parsedSentence -> Parse2VecUtils.getPTPathSentenceVector(parsedSentence.getParses(), ptEmbeddings,
+                        parsePathWordEmbeddings, k, method, layerSize, tokenizerFactory)),
+                (parsedSentence, sentenceVector) -> {
+                    if (sentenceVector != null) {
+                        sink.add(Integer.toString(parsedSentence.getId()), sentenceVector);
+                        added[0]++;
                     }
-                }
+                });
+        if (Parse2VecMetrics.ENABLED) {
+            Parse2VecMetrics.METRICS.pass(Stage.PT_SENTENCE_EMBEDDINGS, System.nanoTime() - start);
+        }
+        return added[0];
+    }
+
+    /**
+     * open the sink of the sentence embeddings, which writes them as SSV, TSV and binary ({@code <prefix>-vectors.bin}),
+     * and possibly indexes them with Lucene ({@code <prefix>-index}), from a separate thread, holding at most
+     * {@code parse2vec.sink.capacity} of them in memory
+     *
+     * @param prefix           the prefix of the output files
+     * @param layerSize        the dimension of the sentence embeddings
+     * @param append           whether to add the sentences to the outputs of a previous run, rather than overwriting them
+     * @param sentenceMetadata the metadata of the sentences to index, or {@code null} not to index them
+     * @return the sink
+     * @throws IOException if the output files cannot be opened
+     */
+    static EmbeddingsSink newSentenceSink(String prefix, int layerSize, boolean append,
+                                          SentenceMetadata sentenceMetadata) throws IOException {
+        List<EmbeddingsSink> sinks = new ArrayList<>();
+        BinaryEmbeddings.Writer binaryWriter;
+        try {
+            sinks.add(new EmbeddingsExporter.Writer(prefix, 3, 1, append));
+            binaryWriter = append ? BinaryEmbeddings.appender(prefix, layerSize)
+                    : new BinaryEmbeddings.Writer(Paths.get(prefix + "-vectors.bin"), layerSize);
+            sinks.add(binaryWriter);
+            if (sentenceMetadata != null) {
+                sinks.add(new SentenceIndex.Writer(Paths.get(prefix + "-index"), sentenceMetadata, append));
             }
+        } catch (IOException e) {
+            EmbeddingsSink.of(sinks.toArray(new EmbeddingsSink[0])).close();
+            throw e;
         }
-        return parsePathSentenceEmbeddings;
-    }
-
-    @NotNull
-    private static MapWordVectorTable extractPTPathWordEmbeddings(WordVectors wordVectors, SentenceDetectorME sentenceDetector,
-                                                                  Parser parser, File dir, MapWordVectorTable ptEmbeddings,
-                                                                  TokenizerFactory tokenizerFactory) throws IOException {
-        logger.info("extracting parse tree enriched word embeddings");
-        MapWordVectorTable parsePathWordEmbeddings = new MapWordVectorTable(new HashMap<>());
-        for (File f : dir.listFiles()) {
-            if (!f.getName().startsWith(".")) {
-                logger.info("processing file {}", f);
-                for (String line : IOUtils.readLines(new FileInputStream(f), Charset.defaultCharset())) {
-                    String[] sentences = sentenceDetector.sentDetect(line);
-                    for (String sentence : sentences) {
-                        Parse2VecUtils.getPTPathWordEmbeddings(wordVectors, parser, ptEmbeddings, parsePathWordEmbeddings, sentence, tokenizerFactory);
-                    }
+        EmbeddingsSink sink = new AsyncEmbeddingsSink(EmbeddingsSink.of(sinks.toArray(new EmbeddingsSink[0])),
+                SINK_CAPACITY);
+        if (!append) {
+            return sink;
+        }
+        // sentences written by a previous run which did not get to save its checkpoint are not repeated
+        return EmbeddingsSink.filter(sink, token -> !binaryWriter.contains(token));
+    }
+
+    /**
+     * @return the word vectors and the ancestor tags of the words of the stored sentences, from which the parse tree
+     * enriched word embeddings are computed once the parse tree embeddings are known
+     */
+    static PathWordAccumulator accumulatePTPathTags(int layerSize, WordVectorTable wordVectors, ParseTreeStore parseTreeStore,
+                                                    TokenizerFactory tokenizerFactory, ExecutorService executor) throws IOException {
+        logger.info("extracting parse tree paths of words");
+        Queue<PathWordAccumulator> accumulators = new ConcurrentLinkedQueue<>();
+        ThreadLocal<PathWordAccumulator> workerAccumulators = ThreadLocal.withInitial(() -> {
+            PathWordAccumulator accumulator = new PathWordAccumulator(layerSize);
+            accumulators.add(accumulator);
+            return accumulator;
+        });
+        long start = System.nanoTime();
+        forEachParsedSentence(parseTreeStore, executor, timed(Stage.PT_WORD_EMBEDDINGS, parsedSentence ->
+                Parse2VecUtils.getPTPathTags(wordVectors, parsedSentence.getParses(), workerAccumulators.get(),
+                        tokenizerFactory)));
+        PathWordAccumulator pathWords = new PathWordAccumulator(layerSize);
+        for (PathWordAccumulator accumulator : accumulators) {
+            pathWords.merge(accumulator);
+        }
+        if (Parse2VecMetrics.ENABLED) {
+            Parse2VecMetrics.METRICS.pass(Stage.PT_WORD_EMBEDDINGS, System.nanoTime() - start);
+        }
+        return pathWords;
+    }
+
+    /**
+     * @return the sums and counts of the parse tree embeddings of the stored sentences
+     */
+    static VectorAccumulator accumulatePTEmbeddings(int layerSize, WordVectorTable wordVectors, ParseTreeStore parseTreeStore,
+                                                    TokenizerFactory tokenizerFactory, ExecutorService executor) throws IOException {
+        logger.info("extracting parse tree embeddings");
+        // each worker accumulates its own sums and counts, which are merged at the end
+        Queue<VectorAccumulator> accumulators = new ConcurrentLinkedQueue<>();
+        ThreadLocal<VectorAccumulator> workerAccumulators = workerAccumulators(accumulators, layerSize);
+        long start = System.nanoTime();
+        forEachParsedSentence(parseTreeStore, executor, timed(Stage.PT_EMBEDDINGS, parsedSentence -> {
+            Parse2VecUtils.getPTEmbeddingsFromSentence(wordVectors, parsedSentence.getParses(), workerAccumulators.get(),
+                    tokenizerFactory);
+            if (Parse2VecMetrics.ENABLED) {
+                // sentences are counted on the first pass over the stored trees, which runs even when parsing is skipped
+                Parse2VecMetrics.METRICS.count(Counter.SENTENCES, 1);
+                for (Parse parse : parsedSentence.getParses()) {
+                    Parse2VecMetrics.METRICS.count(Counter.TOKENS, parse.getTagNodes().length);
                 }
             }
+        }));
+        VectorAccumulator ptAccumulator = merge(accumulators, layerSize);
+        if (Parse2VecMetrics.ENABLED) {
+            Parse2VecMetrics.METRICS.pass(Stage.PT_EMBEDDINGS, System.nanoTime() - start);
         }
-        return parsePathWordEmbeddings;
+        return ptAccumulator;
     }
 
-    @NotNull
-    private static MapWordVectorTable extractPTEmbeddings(int layerSize, WordVectors wordVectors, SentenceDetectorME sentenceDetector,
-                                                          Parser parser, File dir, TokenizerFactory tokenizerFactory) throws IOException {
-        logger.info("extracting parse tree embeddings");
-        MapWordVectorTable ptEmbeddings = new MapWordVectorTable(new HashMap<>());
-        for (File f : dir.listFiles()) {
-            if (!f.getName().startsWith(".")) {
-                logger.info("processing file {}", f);
-                for (String line : IOUtils.readLines(new FileInputStream(f), Charset.defaultCharset())) {
-                    // todo : normalize text, eventually
-                    String[] sentences = sentenceDetector.sentDetect(line);
-                    for (String sentence : sentences) {
-                        Parse2VecUtils.getPTEmbeddingsFromSentence(layerSize, wordVectors, parser, ptEmbeddings, sentence, tokenizerFactory);
-                    }
+    private static ThreadLocal<VectorAccumulator> workerAccumulators(Queue<VectorAccumulator> accumulators, int layerSize) {
+        return ThreadLocal.withInitial(() -> {
+            VectorAccumulator accumulator = new VectorAccumulator(layerSize);
+            accumulators.add(accumulator);
+            return accumulator;
+        });
+    }
+
+    private static VectorAccumulator merge(Collection<VectorAccumulator> accumulators, int layerSize) {
+        VectorAccumulator merged = new VectorAccumulator(layerSize);
+        for (VectorAccumulator accumulator : accumulators) {
+            merged.merge(accumulator);
+        }
+        return merged;
+    }
+
+    /**
+     * stream the parsed sentences from the store to the workers, at most {@code THREADS * 16} of them being in flight
+     */
+    private static void forEachParsedSentence(ParseTreeStore parseTreeStore, ExecutorService executor,
+                                              Consumer<ParsedSentence> consumer) throws IOException {
+        forEachParsedSentence(parseTreeStore, executor, parsedSentence -> {
+            consumer.accept(parsedSentence);
+            return null;
+        }, (parsedSentence, result) -> {
+        });
+    }
+
+    /**
+     * apply the given function to the stored sentences in the workers, handing its results to the given handler in
+     * the calling thread, in the order of the sentences
+     */
+    private static <T> void forEachParsedSentence(ParseTreeStore parseTreeStore, ExecutorService executor,
+                                                  Function<ParsedSentence, T> function,
+                                                  ResultHandler<T> handler) throws IOException {
+        Deque<ParsedSentence> sentences = new ArrayDeque<>();
+        Deque<Future<T>> pending = new ArrayDeque<>();
+        try (ParseTreeStore.Reader reader = parseTreeStore.reader()) {
+            while (reader.hasNext()) {
+                ParsedSentence parsedSentence = reader.next();
+                sentences.add(parsedSentence);
+                pending.add(executor.submit(() -> function.apply(parsedSentence)));
+                if (pending.size() >= THREADS * 16) {
+                    handler.accept(sentences.poll(), ParallelParser.await(pending.poll()));
                 }
             }
+            while (!pending.isEmpty()) {
+                handler.accept(sentences.poll(), ParallelParser.await(pending.poll()));
+            }
         }
-        return ptEmbeddings;
+    }
+
+    private interface ResultHandler<T> {
+        void accept(ParsedSentence parsedSentence, T result) throws IOException;
     }
 
 }
@@ -0,0 +1,264 @@
+package com.github.tteofili.parse2vec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters, per stage timings and latency histograms of a {@link Parse2Vec} run.
+ * <p>
+ * Metrics are only collected when the {@code parse2vec.metrics} system property is {@code true}: instrumented code
+ * checks the constant {@link #ENABLED} flag before reading the clock, so that disabled metrics cost a (JIT eliminated)
+ * branch. All the updates go through {@link LongAdder}s, so workers do not contend on them.
+ * Each stage records the wall clock time of its pass, when it has one, and the time spent by the threads on each of
+ * its items, from which throughputs are derived. While the run is in progress the metrics are exposed as the
+ * {@code com.github.tteofili.parse2vec:type=Parse2VecMetrics} MBean, at the end they are written as JSON.
+ */
+class Parse2VecMetrics implements Parse2VecMetricsMBean {
+
+    static final boolean ENABLED = Boolean.getBoolean("parse2vec.metrics");
+
+    static final Parse2VecMetrics METRICS = new Parse2VecMetrics();
+
+    private static final Logger logger = LoggerFactory.getLogger(Parse2VecMetrics.class);
+
+    enum Stage {
+        WORD2VEC, SENTENCE_DETECTION, PARSING, PT_EMBEDDINGS, PT_WORD_EMBEDDINGS, PT_SENTENCE_EMBEDDINGS, SVD, OUTPUT
+    }
+
+    enum Counter {
+        LINES, SENTENCES, DUPLICATE_SENTENCES, LONG_SENTENCES, TIMED_OUT_SENTENCES, SKIPPED_SENTENCES, TOKENS, MISSING_WORD_VECTORS, MISSING_TAG_VECTORS, MISSING_VECTORS
+    }
+
+    private final LongAdder[] counters = newAdders(Counter.values().length);
+    private final LongAdder[] wallNanos = newAdders(Stage.values().length);
+    private final LongAdder[] busyNanos = newAdders(Stage.values().length);
+    private final LongAdder[] items = newAdders(Stage.values().length);
+    private final Histogram parseLatency = new Histogram();
+    private final Histogram sentenceEmbeddingLatency = new Histogram();
+
+    private static LongAdder[] newAdders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    void count(Counter counter, long delta) {
+        counters[counter.ordinal()].add(delta);
+    }
+
+    /**
+     * record the wall clock time of a pass of a stage
+     */
+    void pass(Stage stage, long nanos) {
+        wallNanos[stage.ordinal()].add(nanos);
+    }
+
+    /**
+     * record the time spent (by any thread) processing some items of a stage
+     */
+    void items(Stage stage, long nanos, long count) {
+        busyNanos[stage.ordinal()].add(nanos);
+        items[stage.ordinal()].add(count);
+    }
+
+    void parsed(long nanos) {
+        items(Stage.PARSING, nanos, 1);
+        parseLatency.add(nanos);
+    }
+
+    void sentenceEmbedded(long nanos) {
+        items(Stage.PT_SENTENCE_EMBEDDINGS, nanos, 1);
+        sentenceEmbeddingLatency.add(nanos);
+    }
+
+    long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    @Override
+    public long getLines() {
+        return get(Counter.LINES);
+    }
+
+    @Override
+    public long getSentences() {
+        return get(Counter.SENTENCES);
+    }
+
+    @Override
+    public long getDuplicateSentences() {
+        return get(Counter.DUPLICATE_SENTENCES);
+    }
+
+    @Override
+    public long getLongSentences() {
+        return get(Counter.LONG_SENTENCES);
+    }
+
+    @Override
+    public long getTimedOutSentences() {
+        return get(Counter.TIMED_OUT_SENTENCES);
+    }
+
+    @Override
+    public long getSkippedSentences() {
+        return get(Counter.SKIPPED_SENTENCES);
+    }
+
+    @Override
+    public long getTokens() {
+        return get(Counter.TOKENS);
+    }
+
+    @Override
+    public long getMissingWordVectors() {
+        return get(Counter.MISSING_WORD_VECTORS);
+    }
+
+    @Override
+    public long getMissingTagVectors() {
+        return get(Counter.MISSING_TAG_VECTORS);
+    }
+
+    @Override
+    public long getMissingVectors() {
+        return get(Counter.MISSING_VECTORS);
+    }
+
+    @Override
+    public String getSummary() {
+        return toJson();
+    }
+
+    /**
+     * register the metrics with the platform MBean server
+     */
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.github.tteofili.parse2vec:type=Parse2VecMetrics");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            logger.warn("cannot register metrics MBean", e);
+        }
+    }
+
+    /**
+     * write the metrics as JSON to the given file and log them
+     */
+    void write(File file) throws IOException {
+        String json = toJson();
+        Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        logger.info("metrics: {}", json);
+    }
+
+    String toJson() {
+        StringBuilder json = new StringBuilder("{\n  \"counters\": {");
+        for (Counter counter : Counter.values()) {
+            json.append(counter.ordinal() > 0 ? "," : "").append("\n    \"").append(name(counter)).append("\": ")
+                    .append(get(counter));
+        }
+        json.append("\n  },\n  \"stages\": {");
+        for (Stage stage : Stage.values()) {
+            long wall = wallNanos[stage.ordinal()].sum();
+            long busy = busyNanos[stage.ordinal()].sum();
+            long count = items[stage.ordinal()].sum();
+            json.append(stage.ordinal() > 0 ? "," : "").append("\n    \"").append(name(stage)).append("\": {")
+                    .append("\"wallMillis\": ").append(wall / 1000000)
+                    .append(", \"busyMillis\": ").append(busy / 1000000)
+                    .append(", \"items\": ").append(count)
+                    .append(", \"itemsPerSecond\": ").append(format(perSecond(count, wall > 0 ? wall : busy)))
+                    .append('}');
+        }
+        json.append("\n  },\n  \"latencies\": {\n    \"parsing\": ").append(parseLatency.toJson())
+                .append(",\n    \"sentenceEmbedding\": ").append(sentenceEmbeddingLatency.toJson())
+                .append("\n  }\n}\n");
+        return json.toString();
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return nanos > 0 ? count * 1e9 / nanos : 0;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    /**
+     * lower camel case name of a constant, e.g. {@code missingWordVectors} for {@code MISSING_WORD_VECTORS}
+     */
+    private static String name(Enum<?> constant) {
+        StringBuilder name = new StringBuilder();
+        for (String part : constant.name().toLowerCase(Locale.ROOT).split("_")) {
+            name.append(name.length() == 0 ? part : Character.toUpperCase(part.charAt(0)) + part.substring(1));
+        }
+        return name.toString();
+    }
+
+    /**
+     * latency histogram with power of two microseconds buckets
+     */
+    static class Histogram {
+
+        private static final int BUCKETS = 40;
+
+        private final LongAdder[] buckets = newAdders(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void add(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros))].increment();
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        /**
+         * @return the upper bound, in microseconds, of the bucket holding the given quantile (capped to the maximum
+         * latency), {@code 0} if empty
+         */
+        long quantileMicros(double quantile) {
+            long total = count.sum();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += buckets[bucket].sum();
+                if (seen >= rank) {
+                    return Math.min(1L << bucket, maxNanos.get() / 1000);
+                }
+            }
+            return maxNanos.get() / 1000;
+        }
+
+        String toJson() {
+            long total = count.sum();
+            return "{\"count\": " + total
+                    + ", \"meanMicros\": " + format(total > 0 ? totalNanos.sum() / 1000d / total : 0)
+                    + ", \"p50Micros\": " + quantileMicros(0.5)
+                    + ", \"p90Micros\": " + quantileMicros(0.9)
+                    + ", \"p99Micros\": " + quantileMicros(0.99)
+                    + ", \"maxMicros\": " + maxNanos.get() / 1000 + '}';
+        }
+    }
+}
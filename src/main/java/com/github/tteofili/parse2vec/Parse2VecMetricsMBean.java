@@ -0,0 +1,41 @@
+package com.github.tteofili.parse2vec;
+
+/**
+ * JMX view of the {@link Parse2VecMetrics} of a run
+ */
+public interface Parse2VecMetricsMBean {
+
+    long getLines();
+
+    long getSentences();
+
+    long getDuplicateSentences();
+
+    /**
+     * @return the number of sentences given a shallow tree as they are too long to be fully parsed
+     */
+    long getLongSentences();
+
+    /**
+     * @return the number of sentences given a shallow tree as fully parsing them took too long
+     */
+    long getTimedOutSentences();
+
+    /**
+     * @return the number of sentences skipped as they are too long to be parsed at all
+     */
+    long getSkippedSentences();
+
+    long getTokens();
+
+    long getMissingWordVectors();
+
+    long getMissingTagVectors();
+
+    long getMissingVectors();
+
+    /**
+     * @return all the metrics, as JSON
+     */
+    String getSummary();
+}
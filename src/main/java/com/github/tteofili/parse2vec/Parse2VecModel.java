@@ -0,0 +1,157 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.cmdline.parser.ParserTool;
+import opennlp.tools.parser.Parse;
+import opennlp.tools.parser.Parser;
+import opennlp.tools.parser.ParserModel;
+import opennlp.tools.util.wordvector.WordVectorTable;
+import org.deeplearning4j.text.tokenization.tokenizerfactory.TokenizerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * A trained parse2vec model, embedding (unseen) sentences on demand.
+ * <p>
+ * The model holds the parser model, the parse tree embeddings and the parse tree enriched word embeddings, together
+ * with the tokenizer used to train them; sentences are parsed and embedded exactly as the ones of the training corpus,
+ * including the {@link BoundedParser} limits on their length and parsing time.
+ * Instances are safe for use by multiple concurrent threads: {@link Parser}s, which are not thread safe, are borrowed
+ * from a pool which grows with the number of concurrent callers and retains up to {@code maxIdleParsers} of them, all
+ * the other state is read only.
+ */
+public class Parse2VecModel {
+
+    private final Supplier<Parser> parserFactory;
+    private final BlockingQueue<Parser> idleParsers;
+    private final WordVectorTable ptEmbeddings;
+    private final WordVectorTable parsePathWordEmbeddings;
+    private final TokenizerFactory tokenizerFactory;
+    private final int k;
+    private final Parse2Vec.Method method;
+    private final int layerSize;
+
+    public Parse2VecModel(ParserModel parserModel, WordVectorTable ptEmbeddings, WordVectorTable parsePathWordEmbeddings,
+                          TokenizerFactory tokenizerFactory) {
+        this(parserModel, ptEmbeddings, parsePathWordEmbeddings, tokenizerFactory, 3, Parse2Vec.Method.CLUSTER,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    public Parse2VecModel(ParserModel parserModel, WordVectorTable ptEmbeddings, WordVectorTable parsePathWordEmbeddings,
+                          TokenizerFactory tokenizerFactory, int k, Parse2Vec.Method method, int maxIdleParsers) {
+        this(() -> new BoundedParser(parserModel, BoundedParser.MAX_TOKENS, BoundedParser.TIMEOUT_NANOS,
+                BoundedParser.MAX_FALLBACK_TOKENS), ptEmbeddings, parsePathWordEmbeddings, tokenizerFactory, k, method,
+                maxIdleParsers);
+    }
+
+    Parse2VecModel(Supplier<Parser> parserFactory, WordVectorTable ptEmbeddings, WordVectorTable parsePathWordEmbeddings,
+                   TokenizerFactory tokenizerFactory, int k, Parse2Vec.Method method, int maxIdleParsers) {
+        if (ptEmbeddings.size() > 0 && ptEmbeddings.dimension() != parsePathWordEmbeddings.dimension()) {
+            throw new IllegalArgumentException("parse tree embeddings dimension " + ptEmbeddings.dimension()
+                    + " does not match word embeddings dimension " + parsePathWordEmbeddings.dimension());
+        }
+        this.parserFactory = parserFactory;
+        this.idleParsers = new LinkedBlockingQueue<>(Math.max(1, maxIdleParsers));
+        this.ptEmbeddings = ptEmbeddings;
+        this.parsePathWordEmbeddings = parsePathWordEmbeddings;
+        this.tokenizerFactory = tokenizerFactory;
+        this.k = k;
+        this.method = method;
+        this.layerSize = parsePathWordEmbeddings.dimension();
+    }
+
+    /**
+     * load a model from the outputs of {@link Parse2Vec}, the embedding tables are memory mapped
+     *
+     * @param parserModel             the OpenNLP parser model file
+     * @param ptEmbeddings            the binary parse tree embeddings ({@code pt-tag-vectors.bin})
+     * @param parsePathWordEmbeddings the binary parse tree enriched word embeddings ({@code pt-word-vectors.bin})
+     * @return the model
+     * @throws IOException if any of the files cannot be read
+     */
+    public static Parse2VecModel load(File parserModel, File ptEmbeddings, File parsePathWordEmbeddings) throws IOException {
+        ParserModel model;
+        try (InputStream parserModelStream = new FileInputStream(parserModel)) {
+            model = new ParserModel(parserModelStream);
+        }
+        LuceneTokenizerFactory tokenizerFactory;
+        try {
+            tokenizerFactory = new LuceneTokenizerFactory(AnalysisUtils.simpleAnalyzer());
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        return new Parse2VecModel(model, BinaryEmbeddings.open(ptEmbeddings.toPath()),
+                BinaryEmbeddings.open(parsePathWordEmbeddings.toPath()), tokenizerFactory);
+    }
+
+    /**
+     * @return the dimension of the sentence embeddings
+     */
+    public int dimension() {
+        return layerSize;
+    }
+
+    /**
+     * embed a sentence
+     *
+     * @param sentence the sentence
+     * @return the parse tree enriched sentence embedding, all zeros if the sentence cannot be parsed
+     */
+    public float[] embed(String sentence) {
+        Parser parser = borrowParser();
+        try {
+            return embed(sentence, parser);
+        } finally {
+            idleParsers.offer(parser);
+        }
+    }
+
+    /**
+     * embed a batch of sentences, using a single parser for the whole batch
+     *
+     * @param sentences the sentences
+     * @return the parse tree enriched sentence embeddings, in the same order of the sentences
+     */
+    public List<float[]> embedBatch(List<String> sentences) {
+        List<float[]> embeddings = new ArrayList<>(sentences.size());
+        Parser parser = borrowParser();
+        try {
+            for (String sentence : sentences) {
+                embeddings.add(embed(sentence, parser));
+            }
+        } finally {
+            idleParsers.offer(parser);
+        }
+        return embeddings;
+    }
+
+    private float[] embed(String sentence, Parser parser) {
+        float[] sentenceVector = null;
+        if (sentence.trim().length() > 0) {
+            Parse[] topParses = ParserTool.parseLine(sentence, parser, 1);
+            if (parser instanceof BoundedParser && ((BoundedParser) parser).getOutcome() == BoundedParser.Outcome.SKIPPED) {
+                return new float[layerSize];
+            }
+            sentenceVector = Parse2VecUtils.getPTPathSentenceVector(topParses, ptEmbeddings, parsePathWordEmbeddings, k,
+                    method, layerSize, tokenizerFactory);
+        }
+        return sentenceVector != null ? sentenceVector : new float[layerSize];
+    }
+
+    private Parser borrowParser() {
+        Parser parser = idleParsers.poll();
+        return parser != null ? parser : parserFactory.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Parse2VecModel{" + "k=" + k + ", method=" + method + ", dimension=" + layerSize + '}';
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVectorTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runner for parse2vec over a corpus split in shards, processed by separate (local or remote) processes sharing a
+ * filesystem, in three steps:
+ * <ol>
+ * <li>{@code shard <input directory> <shard directory> [<shard index> <shard count>]}: parse the files of a shard
+ * (every {@code shard count}-th file of the input directory, starting from {@code shard index}) and save the partial
+ * sums and counts of its parse tree and enriched word embeddings ({@code pt-shard.bin}), together with its parse
+ * trees and sentence metadata, in the shard directory</li>
+ * <li>{@code merge <output directory> <shard directory>...}: merge the partial states of all the shards into the final
+ * {@code pt-tag} and {@code pt-word} tables</li>
+ * <li>{@code sentences <shard directory> <output directory>}: embed the sentences of a shard with the merged tables,
+ * writing the {@code pt-sentence} tables in the shard directory; sentence ids are local to each shard</li>
+ * </ol>
+ * All the shards must use the same word vectors, which are loaded with {@code -Dparse2vec.wordVectors=...}.
+ */
+public class Parse2VecShards {
+
+    private static final Logger logger = LoggerFactory.getLogger(Parse2VecShards.class);
+
+    public static void main(String[] args) throws Exception {
+        if ((args.length == 3 || args.length == 5) && "shard".equals(args[0])) {
+            int index = args.length == 5 ? Integer.parseInt(args[3]) : 0;
+            int count = args.length == 5 ? Integer.parseInt(args[4]) : 1;
+            shard(new File(args[1]), new File(args[2]), index, count);
+        } else if (args.length >= 3 && "merge".equals(args[0])) {
+            List<File> shardDirectories = new ArrayList<>();
+            for (int i = 2; i < args.length; i++) {
+                shardDirectories.add(new File(args[i]));
+            }
+            merge(new File(args[1]), shardDirectories);
+        } else if (args.length == 3 && "sentences".equals(args[0])) {
+            sentences(new File(args[1]), new File(args[2]));
+        } else {
+            throw new Exception("usage: parse2vec-shards shard <input directory> <shard directory> [<shard index> <shard count>]\n"
+                    + "       parse2vec-shards merge <output directory> <shard directory>...\n"
+                    + "       parse2vec-shards sentences <shard directory> <output directory>");
+        }
+    }
+
+    static void shard(File input, File shardDirectory, int index, int count) throws Exception {
+        if (index < 0 || index >= count) {
+            throw new IllegalArgumentException("wrong shard " + index + " of " + count);
+        }
+        String wordVectorsFile = System.getProperty("parse2vec.wordVectors");
+        if (wordVectorsFile == null) {
+            throw new IOException("shards need pre-trained word vectors, e.g. the plain-vectors.bin of a parse2vec run, "
+                    + "set -Dparse2vec.wordVectors=...");
+        }
+        WordVectorTable wordVectors = EmbeddingsUtils.loadWordVectors(new File(wordVectorsFile));
+        int layerSize = wordVectors.dimension();
+
+        List<File> files = new ArrayList<>();
+        List<File> corpusFiles = new CorpusReader(input, Parse2Vec.CHARSET).getFiles();
+        for (int i = index; i < corpusFiles.size(); i += count) {
+            files.add(corpusFiles.get(i));
+        }
+        logger.info("processing {} files of {} in shard {} of {}", files.size(), input, index, count);
+        if (!shardDirectory.isDirectory() && !shardDirectory.mkdirs()) {
+            throw new IOException("cannot create " + shardDirectory);
+        }
+
+        LuceneTokenizerFactory tokenizerFactory = new LuceneTokenizerFactory(AnalysisUtils.simpleAnalyzer());
+        ExecutorService executor = Parse2Vec.newExecutor(Parse2Vec.THREADS);
+        try {
+            ParseTreeStore parseTreeStore = new ParseTreeStore(new File(shardDirectory, ParseTreeStore.DEFAULT_FILE_NAME));
+            SentenceMetadata sentenceMetadata = new SentenceMetadata(
+                    new File(shardDirectory, SentenceMetadata.DEFAULT_PREFIX).getPath());
+            String fingerprint = ParseTreeStore.fingerprint(files, new File(Parse2Vec.PARSER_MODEL));
+            if (parseTreeStore.isValid(fingerprint) && sentenceMetadata.exists()) {
+                logger.info("reusing parse trees from {}", parseTreeStore.getFile());
+            } else {
+                Parse2Vec.parseCorpus(new CorpusReader(files, Parse2Vec.CHARSET), parseTreeStore, fingerprint,
+                        sentenceMetadata, 0, executor);
+            }
+            VectorAccumulator ptTags = Parse2Vec.accumulatePTEmbeddings(layerSize, wordVectors, parseTreeStore,
+                    tokenizerFactory, executor);
+            PathWordAccumulator pathWords = Parse2Vec.accumulatePTPathTags(layerSize, wordVectors, parseTreeStore,
+                    tokenizerFactory, executor);
+            new TrainingCheckpoint(layerSize, TrainingCheckpoint.fileStates(files), sentenceMetadata.size(), ptTags,
+                    pathWords).write(new File(shardDirectory, TrainingCheckpoint.SHARD_FILE_NAME));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static void merge(File outputDirectory, List<File> shardDirectories) throws IOException {
+        VectorAccumulator ptTags = null;
+        PathWordAccumulator pathWords = null;
+        Map<String, File> files = new HashMap<>();
+        int sentences = 0;
+        for (File shardDirectory : shardDirectories) {
+            File stateFile = new File(shardDirectory, TrainingCheckpoint.SHARD_FILE_NAME);
+            TrainingCheckpoint state = TrainingCheckpoint.read(stateFile);
+            if (state == null) {
+                throw new IOException("no shard state " + stateFile);
+            }
+            logger.info("merging {} from {}", state, shardDirectory);
+            if (ptTags == null) {
+                ptTags = new VectorAccumulator(state.getLayerSize());
+                pathWords = new PathWordAccumulator(state.getLayerSize());
+            } else if (state.getLayerSize() != ptTags.dimension()) {
+                throw new IOException("cannot merge shards of layer size " + ptTags.dimension() + " and "
+                        + state.getLayerSize() + " from " + shardDirectory);
+            }
+            for (String file : state.getFiles().keySet()) {
+                File previous = files.put(file, shardDirectory);
+                if (previous != null) {
+                    throw new IOException(file + " is in both " + previous + " and " + shardDirectory);
+                }
+            }
+            ptTags.merge(state.getPTTags());
+            pathWords.merge(state.getPathWords());
+            sentences += state.getSentences();
+        }
+        if (ptTags == null) {
+            throw new IOException("no shards to merge");
+        }
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("cannot create " + outputDirectory);
+        }
+
+        ExecutorService executor = Parse2Vec.newExecutor(Parse2Vec.THREADS);
+        try {
+            DenseWordVectorTable ptEmbeddings = ptTags.means();
+            ptEmbeddings.normalize();
+            String ptPrefix = new File(outputDirectory, "pt-tag").getPath();
+            EmbeddingsExporter.writeEmbeddings(ptEmbeddings, ptPrefix, 3, 1, executor, Parse2Vec.THREADS);
+            BinaryEmbeddings.writeEmbeddingsAsBinary(ptEmbeddings, ptPrefix);
+
+            DenseWordVectorTable parsePathWordEmbeddings = pathWords.means(ptEmbeddings);
+            parsePathWordEmbeddings.normalize();
+            String wordPrefix = new File(outputDirectory, "pt-word").getPath();
+            EmbeddingsExporter.writeEmbeddings(parsePathWordEmbeddings, wordPrefix, 3, 1, executor, Parse2Vec.THREADS);
+            BinaryEmbeddings.writeEmbeddingsAsBinary(parsePathWordEmbeddings, wordPrefix);
+            logger.info("merged {} shards ({} files, {} sentences) into {} tags and {} words", shardDirectories.size(),
+                    files.size(), sentences, ptEmbeddings.size(), parsePathWordEmbeddings.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static void sentences(File shardDirectory, File outputDirectory) throws Exception {
+        MappedWordVectorTable ptEmbeddings = BinaryEmbeddings.open(
+                Paths.get(outputDirectory.getPath(), "pt-tag-vectors.bin"));
+        MappedWordVectorTable parsePathWordEmbeddings = BinaryEmbeddings.open(
+                Paths.get(outputDirectory.getPath(), "pt-word-vectors.bin"));
+        ParseTreeStore parseTreeStore = new ParseTreeStore(new File(shardDirectory, ParseTreeStore.DEFAULT_FILE_NAME));
+        LuceneTokenizerFactory tokenizerFactory = new LuceneTokenizerFactory(AnalysisUtils.simpleAnalyzer());
+        ExecutorService executor = Parse2Vec.newExecutor(Parse2Vec.THREADS);
+        try {
+            String prefix = new File(shardDirectory, "pt-sentence").getPath();
+            int sentences;
+            try (EmbeddingsSink sentenceSink = Parse2Vec.newSentenceSink(prefix, ptEmbeddings.dimension(), false,
+                    Parse2Vec.LUCENE_INDEX ? new SentenceMetadata(
+                            new File(shardDirectory, SentenceMetadata.DEFAULT_PREFIX).getPath()) : null)) {
+                sentences = Parse2Vec.extractPTPathSentenceEmbeddings(parseTreeStore, ptEmbeddings,
+                        parsePathWordEmbeddings, 3, Parse2Vec.Method.CLUSTER, ptEmbeddings.dimension(),
+                        tokenizerFactory, executor, sentenceSink);
+            }
+            logger.info("embedded {} sentences of {}", sentences, shardDirectory);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.parser.Parse;
+import opennlp.tools.util.Span;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Binary on-disk store of parse trees, filled by a single sentence detection and parsing pass and then streamed back
+ * by each of the embedding passes.
+ * <p>
+ * The layout is a small header (magic, version, corpus fingerprint) followed by one record per sentence: the sentence
+ * id, the sentence text, the number of top parses and each tree serialized in pre-order as (type id, span start, span
+ * length, head index, children count) varints. Node types are interned in a dictionary that is built inline, the first
+ * occurrence of a type being followed by its name. Parse probabilities are not stored.
+ * <p>
+ * A store is only considered valid when it has been completely written and its fingerprint matches the one of the
+ * current corpus, in which case parsing can be skipped altogether.
+ */
+class ParseTreeStore {
+
+    static final String DEFAULT_FILE_NAME = "pt-trees.bin";
+
+    private static final int MAGIC = 0x50325654;
+    private static final int VERSION = 2;
+    private static final byte RECORD = 1;
+    private static final byte END = 0;
+
+    private static final Logger logger = LoggerFactory.getLogger(ParseTreeStore.class);
+
+    private final File file;
+
+    ParseTreeStore(File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * check whether this store has been completely written for the corpus with the given fingerprint
+     *
+     * @param fingerprint the corpus fingerprint
+     * @return {@code true} if the stored trees can be reused, {@code false} otherwise
+     */
+    boolean isValid(String fingerprint) {
+        if (!file.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION && fingerprint.equals(in.readUTF());
+        } catch (IOException e) {
+            logger.warn("cannot read parse tree store {}", file, e);
+            return false;
+        }
+    }
+
+    Writer writer(String fingerprint) throws IOException {
+        return new Writer(fingerprint);
+    }
+
+    Reader reader() throws IOException {
+        return new Reader();
+    }
+
+    /**
+     * compute a fingerprint of the corpus, based on names, sizes and modification times of the input files and the
+     * parser model used to parse them
+     *
+     * @param files       the corpus files
+     * @param parserModel the parser model file
+     * @return an hex encoded fingerprint
+     */
+    static String fingerprint(Iterable<File> files, File parserModel) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            List<File> sorted = new ArrayList<>();
+            for (File f : files) {
+                sorted.add(f);
+            }
+            sorted.sort(Comparator.comparing(File::getAbsolutePath));
+            List<File> all = new ArrayList<>(sorted);
+            all.add(parserModel);
+            for (File f : all) {
+                digest.update(f.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+                digest.update(Long.toString(f.length()).getBytes(StandardCharsets.UTF_8));
+                digest.update(Long.toString(f.lastModified()).getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * appends parsed sentences to a temporary file which replaces the store only once it is committed
+     */
+    class Writer implements Closeable {
+
+        private final File tmpFile;
+        private final DataOutputStream out;
+        private final Map<String, Integer> types = new HashMap<>();
+        private long count = 0;
+        private boolean committed = false;
+
+        private Writer(String fingerprint) throws IOException {
+            this.tmpFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(fingerprint);
+        }
+
+        /**
+         * add a sentence, whose id is the number of sentences added before it
+         */
+        void add(String sentence, Parse[] parses) throws IOException {
+            add((int) count, sentence, parses);
+        }
+
+        void add(int id, String sentence, Parse[] parses) throws IOException {
+            out.writeByte(RECORD);
+            writeVInt(id);
+            writeString(sentence);
+            writeVInt(parses.length);
+            for (Parse parse : parses) {
+                writeString(parse.getText());
+                writeNode(parse);
+            }
+            count++;
+        }
+
+        private void writeNode(Parse node) throws IOException {
+            String type = node.getType();
+            Integer id = types.get(type);
+            if (id == null) {
+                id = types.size();
+                types.put(type, id);
+                writeVInt(id);
+                writeString(type);
+            } else {
+                writeVInt(id);
+            }
+            Span span = node.getSpan();
+            writeVInt(span.getStart());
+            writeVInt(span.getEnd() - span.getStart());
+            writeVInt(node.getHeadIndex());
+            Parse[] children = node.getChildren();
+            writeVInt(children.length);
+            for (Parse child : children) {
+                writeNode(child);
+            }
+        }
+
+        private void writeString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeVInt(int i) throws IOException {
+            while ((i & ~0x7F) != 0) {
+                out.writeByte((i & 0x7F) | 0x80);
+                i >>>= 7;
+            }
+            out.writeByte(i);
+        }
+
+        /**
+         * complete the store, making it visible to subsequent runs
+         */
+        void commit() throws IOException {
+            out.writeByte(END);
+            out.writeLong(count);
+            out.close();
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            committed = true;
+            logger.info("stored {} parsed sentences in {}", count, file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                out.close();
+                Files.deleteIfExists(tmpFile.toPath());
+            }
+        }
+    }
+
+    /**
+     * streams parsed sentences back from the store, one at a time
+     */
+    class Reader implements Iterator<ParsedSentence>, Closeable {
+
+        private final DataInputStream in;
+        private final List<String> types = new ArrayList<>();
+        private ParsedSentence next;
+
+        private Reader() throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                in.close();
+                throw new IOException("not a valid parse tree store " + file);
+            }
+            in.readUTF();
+            next = readNext();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public ParsedSentence next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            ParsedSentence current = next;
+            try {
+                next = readNext();
+            } catch (IOException e) {
+                throw new RuntimeException("cannot read parse tree store " + file, e);
+            }
+            return current;
+        }
+
+        private ParsedSentence readNext() throws IOException {
+            byte marker;
+            try {
+                marker = in.readByte();
+            } catch (EOFException e) {
+                throw new IOException("truncated parse tree store " + file, e);
+            }
+            if (marker == END) {
+                return null;
+            }
+            int id = readVInt();
+            String sentence = readString();
+            Parse[] parses = new Parse[readVInt()];
+            for (int i = 0; i < parses.length; i++) {
+                String text = readString();
+                parses[i] = readNode(text, null);
+            }
+            return new ParsedSentence(id, sentence, parses);
+        }
+
+        private Parse readNode(String text, Parse parent) throws IOException {
+            int id = readVInt();
+            String type;
+            if (id == types.size()) {
+                type = readString();
+                types.add(type);
+            } else {
+                type = types.get(id);
+            }
+            int start = readVInt();
+            int end = start + readVInt();
+            int headIndex = readVInt();
+            Parse node = new Parse(text, new Span(start, end), type, 1d, headIndex);
+            if (parent != null) {
+                parent.insert(node);
+            }
+            int children = readVInt();
+            for (int c = 0; c < children; c++) {
+                readNode(text, node);
+            }
+            return node;
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[readVInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int readVInt() throws IOException {
+            int b = in.readByte();
+            int i = b & 0x7F;
+            for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+                b = in.readByte();
+                i |= (b & 0x7F) << shift;
+            }
+            return i;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
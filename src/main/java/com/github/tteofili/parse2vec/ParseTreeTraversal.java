@@ -0,0 +1,139 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.parser.Parse;
+import opennlp.tools.util.wordvector.WordVector;
+import opennlp.tools.util.wordvector.WordVectorTable;
+import org.deeplearning4j.text.tokenization.tokenizerfactory.TokenizerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single pass, depth first, traversals of parse trees, visiting each node exactly once:
+ * <ul>
+ * <li>bottom up (post-order), to aggregate the vectors of the children of each node into the node vector</li>
+ * <li>top down (pre-order), to collect the tags of the ancestors of each node, along the path from the root</li>
+ * </ul>
+ * The vectors of the nodes being visited are kept in one buffer per depth, reused across nodes and trees, so that a
+ * traversal costs time linear in the size of the tree and allocates nothing but the buffers for new depths.
+ * Instances are not thread safe.
+ */
+class ParseTreeTraversal {
+
+    private final int dimension;
+    private final List<float[]> buffers = new ArrayList<>();
+    private final List<String> path = new ArrayList<>();
+
+    ParseTreeTraversal(int dimension) {
+        this.dimension = dimension;
+    }
+
+    /**
+     * accumulate the parse tag embeddings of the given tree: the vector of a token node is its word vector, the
+     * vector of any other node is the average of its children vectors (skipping children without a vector)
+     *
+     * @param root             the root of the tree
+     * @param wordVectors      the word vectors
+     * @param ptEmbeddings     the accumulator of the vectors of each tag
+     * @param tokenizerFactory the tokenizer factory used to normalize the tokens
+     */
+    void accumulateTags(Parse root, WordVectorTable wordVectors, VectorAccumulator ptEmbeddings,
+                        TokenizerFactory tokenizerFactory) {
+        accumulateTags(root, 0, wordVectors, ptEmbeddings, tokenizerFactory);
+    }
+
+    private boolean accumulateTags(Parse node, int depth, WordVectorTable wordVectors, VectorAccumulator ptEmbeddings,
+                                   TokenizerFactory tokenizerFactory) {
+        float[] nodeVector = buffer(depth);
+        boolean found = false;
+        Parse[] children = node.getChildren();
+        if (children.length == 0) {
+            String coveredText = Parse2VecUtils.normalize(tokenizerFactory, node.getCoveredText());
+            WordVector vector = coveredText != null ? wordVectors.get(coveredText) : null;
+            if (vector != null && vector.dimension() == dimension) {
+                vector.toFloatBuffer().get(nodeVector, 0, dimension);
+                found = true;
+            } else {
+                Parse2VecUtils.count(Parse2VecMetrics.Counter.MISSING_WORD_VECTORS);
+            }
+        } else {
+            Arrays.fill(nodeVector, 0f);
+            int n = 0;
+            for (Parse child : children) {
+                if (accumulateTags(child, depth + 1, wordVectors, ptEmbeddings, tokenizerFactory)) {
+                    VectorMath.add(nodeVector, 0, buffers.get(depth + 1), 0, dimension);
+                    n++;
+                }
+            }
+            if (n > 0) {
+                VectorMath.divide(nodeVector, 0, dimension, n);
+                found = true;
+            }
+        }
+        String type = node.getType();
+        if (found && type != null && type.trim().length() > 0) {
+            ptEmbeddings.add(type, nodeVector);
+        }
+        return found;
+    }
+
+    /**
+     * accumulate the word vectors of the words of the given tree, together with the tags of the ancestors of their tag
+     * nodes (the root included), so that the parse path word embeddings can be computed once the parse tag embeddings
+     * are known, see {@link PathWordAccumulator}
+     *
+     * @param root             the root of the tree
+     * @param wordVectors      the word vectors
+     * @param pathWords        the accumulator of the words and of their ancestors
+     * @param tokenizerFactory the tokenizer factory used to normalize the words
+     */
+    void accumulatePathTags(Parse root, WordVectorTable wordVectors, PathWordAccumulator pathWords,
+                            TokenizerFactory tokenizerFactory) {
+        path.clear();
+        accumulatePathTags(root, 0, wordVectors, pathWords, tokenizerFactory);
+    }
+
+    /**
+     * @param depth the depth of the node, the first {@code depth} entries of {@link #path} are the tags of its ancestors
+     */
+    private void accumulatePathTags(Parse node, int depth, WordVectorTable wordVectors, PathWordAccumulator pathWords,
+                                    TokenizerFactory tokenizerFactory) {
+        if (node.isPosTag()) {
+            if (depth < 2) {
+                // tag nodes are collected below the children of the root, which are skipped even when they are tag nodes
+                return;
+            }
+            String word = Parse2VecUtils.normalize(tokenizerFactory, node.getCoveredText());
+            if (word != null) {
+                WordVector vector = wordVectors.get(word);
+                if (vector != null && vector.dimension() == dimension) {
+                    float[] wordVector = buffer(depth);
+                    vector.toFloatBuffer().get(wordVector);
+                    pathWords.add(word, wordVector, path.subList(0, depth));
+                } else {
+                    Parse2VecUtils.count(Parse2VecMetrics.Counter.MISSING_WORD_VECTORS);
+                }
+            }
+            return;
+        }
+        Parse[] children = node.getChildren();
+        if (children.length == 0) {
+            return;
+        }
+        while (path.size() > depth) {
+            path.remove(path.size() - 1);
+        }
+        path.add(node.getType());
+        for (Parse child : children) {
+            accumulatePathTags(child, depth + 1, wordVectors, pathWords, tokenizerFactory);
+        }
+    }
+
+    private float[] buffer(int depth) {
+        while (buffers.size() <= depth) {
+            buffers.add(new float[dimension]);
+        }
+        return buffers.get(depth);
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.parser.Parse;
+
+/**
+ * A detected sentence together with the top parses the parser produced for it and, depending on where it comes
+ * from, its id or its source line and hash
+ */
+class ParsedSentence {
+
+    private final int id;
+    private final String sentence;
+    private final Parse[] parses;
+    private final String source;
+    private final long line;
+    private final SentenceHash hash;
+    private final BoundedParser.Outcome outcome;
+
+    ParsedSentence(String sentence, Parse[] parses) {
+        this(-1, sentence, parses, null, 0, null, null);
+    }
+
+    ParsedSentence(int id, String sentence, Parse[] parses) {
+        this(id, sentence, parses, null, 0, null, null);
+    }
+
+    ParsedSentence(String sentence, Parse[] parses, String source, long line, SentenceHash hash,
+                   BoundedParser.Outcome outcome) {
+        this(-1, sentence, parses, source, line, hash, outcome);
+    }
+
+    private ParsedSentence(int id, String sentence, Parse[] parses, String source, long line, SentenceHash hash,
+                           BoundedParser.Outcome outcome) {
+        this.id = id;
+        this.sentence = sentence;
+        this.parses = parses;
+        this.source = source;
+        this.line = line;
+        this.hash = hash;
+        this.outcome = outcome;
+    }
+
+    /**
+     * @return the id of the sentence, or {@code -1} if it has not been assigned one
+     */
+    int getId() {
+        return id;
+    }
+
+    String getSentence() {
+        return sentence;
+    }
+
+    Parse[] getParses() {
+        return parses;
+    }
+
+    /**
+     * @return the file the sentence was read from, or {@code null} if unknown
+     */
+    String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the line (starting from 1) of its source the sentence was read from
+     */
+    long getLine() {
+        return line;
+    }
+
+    /**
+     * @return the hash of the text of the sentence, or {@code null} if not computed
+     */
+    SentenceHash getHash() {
+        return hash;
+    }
+
+    /**
+     * @return how the sentence has been parsed, or {@code null} if unknown (e.g. for stored or unparsed sentences)
+     */
+    BoundedParser.Outcome getOutcome() {
+        return outcome;
+    }
+}
@@ -0,0 +1,188 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVector;
+import opennlp.tools.util.wordvector.WordVectorTable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates the parse path word embeddings without the parse tag embeddings they depend on: for each word, the sum
+ * of its word vectors and, for each tag, the number of times a node with that tag is an ancestor of the word.
+ * <p>
+ * As the parse path vector of a word is its word vector plus the sum of the tag embeddings of its ancestors, the mean
+ * of all of them can be computed once the tag embeddings are known, so that partial accumulators (e.g. of different
+ * shards of a corpus) can be built independently and merged before any tag embedding exists.
+ */
+class PathWordAccumulator {
+
+  private final VectorAccumulator words;
+  private final Map<String, Integer> tagIds = new HashMap<>();
+  private final List<String> tags = new ArrayList<>();
+  private final Map<String, long[]> ancestorCounts = new HashMap<>();
+
+  PathWordAccumulator(int dimension) {
+    this(new VectorAccumulator(dimension));
+  }
+
+  private PathWordAccumulator(VectorAccumulator words) {
+    this.words = words;
+  }
+
+  int dimension() {
+    return words.dimension();
+  }
+
+  int size() {
+    return words.size();
+  }
+
+  /**
+   * add an occurrence of a word
+   *
+   * @param word      the word
+   * @param vector    the word vector
+   * @param ancestors the tags of the ancestors of the word, from the root
+   */
+  void add(String word, float[] vector, List<String> ancestors) {
+    words.add(word, vector);
+    counts(word);
+    for (String tag : ancestors) {
+      add(word, tag, 1);
+    }
+  }
+
+  /**
+   * merge the observations of another accumulator into this one
+   *
+   * @param other the accumulator to merge
+   */
+  void merge(PathWordAccumulator other) {
+    words.merge(other.words);
+    for (Map.Entry<String, long[]> entry : other.ancestorCounts.entrySet()) {
+      counts(entry.getKey());
+      long[] otherCounts = entry.getValue();
+      for (int otherTagId = 0; otherTagId < otherCounts.length; otherTagId++) {
+        if (otherCounts[otherTagId] > 0) {
+          add(entry.getKey(), other.tags.get(otherTagId), otherCounts[otherTagId]);
+        }
+      }
+    }
+  }
+
+  private void add(String word, String tag, long count) {
+    long[] counts = counts(word);
+    int tagId = tagId(tag);
+    if (tagId >= counts.length) {
+      counts = Arrays.copyOf(counts, tags.size());
+      ancestorCounts.put(word, counts);
+    }
+    counts[tagId] += count;
+  }
+
+  private long[] counts(String word) {
+    return ancestorCounts.computeIfAbsent(word, w -> new long[tags.size()]);
+  }
+
+  private int tagId(String tag) {
+    Integer tagId = tagIds.get(tag);
+    if (tagId == null) {
+      tagId = tags.size();
+      tagIds.put(tag, tagId);
+      tags.add(tag);
+    }
+    return tagId;
+  }
+
+  /**
+   * @param ptEmbeddings the parse tag embeddings, ancestors whose tag has no embedding are skipped
+   * @return a table holding the mean parse path vector of each word
+   */
+  DenseWordVectorTable means(WordVectorTable ptEmbeddings) {
+    int dimension = words.dimension();
+    float[][] tagVectors = new float[tags.size()][];
+    for (int tagId = 0; tagId < tags.size(); tagId++) {
+      WordVector ptVector = ptEmbeddings.get(tags.get(tagId));
+      if (ptVector != null) {
+        tagVectors[tagId] = new float[dimension];
+        ptVector.toFloatBuffer().get(tagVectors[tagId]);
+      }
+    }
+    DenseWordVectorTable wordMeans = words.means();
+    DenseWordVectorTable means = new DenseWordVectorTable(dimension, wordMeans.size());
+    float[] mean = new float[dimension];
+    float[] weighted = new float[dimension];
+    for (int row = 0; row < wordMeans.size(); row++) {
+      String word = wordMeans.token(row);
+      System.arraycopy(wordMeans.data(), row * dimension, mean, 0, dimension);
+      long count = words.count(word);
+      long[] counts = ancestorCounts.get(word);
+      for (int tagId = 0; tagId < counts.length; tagId++) {
+        if (counts[tagId] > 0 && tagVectors[tagId] != null) {
+          // the tag contributes its vector once per ancestor occurrence, so (occurrences / count) times to the mean
+          System.arraycopy(tagVectors[tagId], 0, weighted, 0, dimension);
+          VectorMath.scale(weighted, 0, dimension, (float) counts[tagId] / count);
+          VectorMath.add(mean, weighted);
+        }
+      }
+      means.put(word, mean);
+    }
+    return means;
+  }
+
+  /**
+   * write the state of this accumulator, to be read back by {@link #read(DataInputStream)}
+   *
+   * @param out the output stream
+   * @throws IOException if writing fails
+   */
+  void write(DataOutputStream out) throws IOException {
+    words.write(out);
+    out.writeInt(tags.size());
+    for (String tag : tags) {
+      out.writeUTF(tag);
+    }
+    Iterator<String> tokens = words.tokens();
+    while (tokens.hasNext()) {
+      long[] counts = ancestorCounts.get(tokens.next());
+      out.writeInt(counts.length);
+      for (long count : counts) {
+        out.writeLong(count);
+      }
+    }
+  }
+
+  static PathWordAccumulator read(DataInputStream in) throws IOException {
+    VectorAccumulator words = VectorAccumulator.read(in);
+    PathWordAccumulator accumulator = new PathWordAccumulator(words);
+    int tagCount = in.readInt();
+    for (int tagId = 0; tagId < tagCount; tagId++) {
+      accumulator.tagId(in.readUTF());
+    }
+    Iterator<String> tokens = words.tokens();
+    while (tokens.hasNext()) {
+      long[] counts = new long[in.readInt()];
+      if (counts.length > tagCount) {
+        throw new IOException("corrupted ancestor counts of " + counts.length + " tags out of " + tagCount);
+      }
+      for (int tagId = 0; tagId < counts.length; tagId++) {
+        counts[tagId] = in.readLong();
+      }
+      accumulator.ancestorCounts.put(tokens.next(), counts);
+    }
+    return accumulator;
+  }
+
+  @Override
+  public String toString() {
+    return "PathWordAccumulator{" + "dimension=" + words.dimension() + ", size=" + words.size() + ", tags="
+        + tags.size() + '}';
+  }
+}
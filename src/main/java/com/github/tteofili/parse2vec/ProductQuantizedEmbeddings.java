@@ -0,0 +1,254 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVectorTable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Product quantization of the (normalized) rows of an embedding table: the dimensions are split in contiguous
+ * subspaces and the slice of each row in each subspace is replaced by the (byte) id of its nearest centroid, out of
+ * (up to) 256 learned by k-means over a sample of the rows, so that a row takes one byte per subspace (e.g. 16x
+ * smaller than floats with 4 dimensions per subspace).
+ * <p>
+ * A search computes, once per query, the dot products of each slice of the query with all the centroids of its
+ * subspace; the score of a row is then the sum of one table lookup per subspace.
+ */
+class ProductQuantizedEmbeddings extends QuantizedEmbeddings {
+
+    static final int MAX_CENTROIDS = 256;
+
+    private final int subspaces;
+    private final int centroids;
+    private final int[] offsets;
+    private final float[][] codebooks;
+    private final byte[] codes;
+
+    private ProductQuantizedEmbeddings(int dimension, String[] tokens, int subspaces, int centroids, float[][] codebooks,
+                                       byte[] codes) {
+        super(dimension, tokens);
+        this.subspaces = subspaces;
+        this.centroids = centroids;
+        this.offsets = offsets(dimension, subspaces);
+        this.codebooks = codebooks;
+        this.codes = codes;
+    }
+
+    /**
+     * @return the first dimension of each subspace, followed by the dimension of the vectors
+     */
+    private static int[] offsets(int dimension, int subspaces) {
+        int[] offsets = new int[subspaces + 1];
+        for (int subspace = 0; subspace <= subspaces; subspace++) {
+            offsets[subspace] = (int) ((long) subspace * dimension / subspaces);
+        }
+        return offsets;
+    }
+
+    /**
+     * quantize the rows of a table
+     *
+     * @param table      the table
+     * @param subspaces  the number of subspaces, i.e. the number of bytes of each code
+     * @param iterations the number of k-means iterations
+     * @param sampleSize the maximum number of rows the centroids are learned from
+     * @param seed       the seed of the sampling of the rows
+     * @param executor   the executor the subspaces are trained, and the rows are encoded, on
+     * @param threads    the number of threads of the executor
+     * @return the quantized rows
+     * @throws IOException if a task fails
+     */
+    static ProductQuantizedEmbeddings quantize(WordVectorTable table, int subspaces, int iterations, int sampleSize,
+                                               long seed, ExecutorService executor, int threads) throws IOException {
+        int dimension = table.dimension();
+        if (subspaces < 1 || subspaces > dimension) {
+            throw new IllegalArgumentException("cannot split " + dimension + " dimensions in " + subspaces + " subspaces");
+        }
+        String[] tokens = tokens(table);
+        if ((long) tokens.length * subspaces > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too many rows to quantize " + tokens.length);
+        }
+        int[] offsets = offsets(dimension, subspaces);
+
+        // a uniform sample of the rows, in random order
+        Random random = new Random(seed);
+        int[] rows = new int[tokens.length];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = row;
+        }
+        float[][] sample = new float[Math.min(sampleSize, tokens.length)][];
+        for (int s = 0; s < sample.length; s++) {
+            int pick = s + random.nextInt(rows.length - s);
+            int row = rows[pick];
+            rows[pick] = rows[s];
+            rows[s] = row;
+            sample[s] = new float[dimension];
+            normalizedRow(table, tokens[row], sample[s]);
+        }
+        int centroids = Math.min(MAX_CENTROIDS, sample.length);
+
+        List<Future<float[]>> trained = new ArrayList<>();
+        for (int subspace = 0; subspace < subspaces; subspace++) {
+            int offset = offsets[subspace];
+            int width = offsets[subspace + 1] - offset;
+            long subspaceSeed = seed + subspace;
+            trained.add(executor.submit(() -> train(sample, offset, width, centroids, iterations,
+                    new Random(subspaceSeed))));
+        }
+        float[][] codebooks = new float[subspaces][];
+        for (int subspace = 0; subspace < subspaces; subspace++) {
+            codebooks[subspace] = ParallelParser.await(trained.get(subspace));
+        }
+
+        byte[] codes = new byte[tokens.length * subspaces];
+        int rowsPerTask = Math.max(1024, (tokens.length + threads - 1) / Math.max(1, threads));
+        List<Future<?>> encoded = new ArrayList<>();
+        for (int from = 0; from < tokens.length; from += rowsPerTask) {
+            int start = from;
+            int end = Math.min(tokens.length, from + rowsPerTask);
+            encoded.add(executor.submit(() -> {
+                float[] vector = new float[dimension];
+                for (int row = start; row < end; row++) {
+                    normalizedRow(table, tokens[row], vector);
+                    for (int subspace = 0; subspace < subspaces; subspace++) {
+                        int offset = offsets[subspace];
+                        codes[row * subspaces + subspace] = (byte) nearest(codebooks[subspace], centroids,
+                                offsets[subspace + 1] - offset, vector, offset);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : encoded) {
+            ParallelParser.await(future);
+        }
+        return new ProductQuantizedEmbeddings(dimension, tokens, subspaces, centroids, codebooks, codes);
+    }
+
+    /**
+     * learn the centroids of a subspace with (Lloyd's) k-means, starting from the first rows of the (shuffled) sample;
+     * centroids left without rows are moved to random rows
+     *
+     * @return the row major {@code centroids x width} centroids
+     */
+    private static float[] train(float[][] sample, int offset, int width, int centroids, int iterations, Random random) {
+        float[] codebook = new float[centroids * width];
+        for (int centroid = 0; centroid < centroids; centroid++) {
+            System.arraycopy(sample[centroid], offset, codebook, centroid * width, width);
+        }
+        float[] sums = new float[centroids * width];
+        int[] counts = new int[centroids];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+            for (float[] vector : sample) {
+                int centroid = nearest(codebook, centroids, width, vector, offset);
+                VectorMath.add(sums, centroid * width, vector, offset, width);
+                counts[centroid]++;
+            }
+            for (int centroid = 0; centroid < centroids; centroid++) {
+                if (counts[centroid] > 0) {
+                    System.arraycopy(sums, centroid * width, codebook, centroid * width, width);
+                    VectorMath.divide(codebook, centroid * width, width, counts[centroid]);
+                } else {
+                    System.arraycopy(sample[random.nextInt(sample.length)], offset, codebook, centroid * width, width);
+                }
+            }
+        }
+        return codebook;
+    }
+
+    private static int nearest(float[] codebook, int centroids, int width, float[] vector, int offset) {
+        int nearest = 0;
+        float nearestDistance = Float.POSITIVE_INFINITY;
+        for (int centroid = 0; centroid < centroids; centroid++) {
+            float distance = VectorMath.distance2(vector, offset, codebook, centroid * width, width);
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = centroid;
+            }
+        }
+        return nearest;
+    }
+
+    @Override
+    long codeBytes() {
+        long bytes = codes.length;
+        for (float[] codebook : codebooks) {
+            bytes += 4L * codebook.length;
+        }
+        return bytes;
+    }
+
+    @Override
+    void decode(int row, float[] vector) {
+        for (int subspace = 0; subspace < subspaces; subspace++) {
+            int width = offsets[subspace + 1] - offsets[subspace];
+            int centroid = codes[row * subspaces + subspace] & 0xFF;
+            System.arraycopy(codebooks[subspace], centroid * width, vector, offsets[subspace], width);
+        }
+    }
+
+    @Override
+    void score(float[] query, NearestNeighbourSearch.TopK topK) {
+        float[] products = new float[subspaces * centroids];
+        for (int subspace = 0; subspace < subspaces; subspace++) {
+            int width = offsets[subspace + 1] - offsets[subspace];
+            for (int centroid = 0; centroid < centroids; centroid++) {
+                products[subspace * centroids + centroid] = VectorMath.dot(query, offsets[subspace],
+                        codebooks[subspace], centroid * width, width);
+            }
+        }
+        for (int row = 0, offset = 0; row < tokens.length; row++, offset += subspaces) {
+            float score = 0;
+            for (int subspace = 0; subspace < subspaces; subspace++) {
+                score += products[subspace * centroids + (codes[offset + subspace] & 0xFF)];
+            }
+            topK.add(row, score);
+        }
+    }
+
+    @Override
+    void writeCodes(DataOutputStream out) throws IOException {
+        out.writeInt(subspaces);
+        out.writeInt(centroids);
+        for (float[] codebook : codebooks) {
+            for (float value : codebook) {
+                out.writeFloat(value);
+            }
+        }
+        out.write(codes);
+    }
+
+    static ProductQuantizedEmbeddings readCodes(int dimension, String[] tokens, DataInputStream in) throws IOException {
+        int subspaces = in.readInt();
+        int centroids = in.readInt();
+        if (subspaces < 1 || subspaces > dimension || centroids < 0 || centroids > MAX_CENTROIDS) {
+            throw new IOException("corrupted product quantization of " + subspaces + " subspaces and " + centroids
+                    + " centroids");
+        }
+        int[] offsets = offsets(dimension, subspaces);
+        float[][] codebooks = new float[subspaces][];
+        for (int subspace = 0; subspace < subspaces; subspace++) {
+            codebooks[subspace] = new float[centroids * (offsets[subspace + 1] - offsets[subspace])];
+            for (int i = 0; i < codebooks[subspace].length; i++) {
+                codebooks[subspace][i] = in.readFloat();
+            }
+        }
+        byte[] codes = new byte[tokens.length * subspaces];
+        in.readFully(codes);
+        return new ProductQuantizedEmbeddings(dimension, tokens, subspaces, centroids, codebooks, codes);
+    }
+
+    @Override
+    public String toString() {
+        return "ProductQuantizedEmbeddings{" + "dimension=" + dimension + ", size=" + tokens.length + ", subspaces="
+                + subspaces + ", centroids=" + centroids + '}';
+    }
+}
@@ -0,0 +1,216 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVector;
+import opennlp.tools.util.wordvector.WordVectorTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compressed, in memory, copy of an embedding table, holding a short code for each (normalized) row, which is
+ * searched by cosine similarity without decoding the rows: the query is compared against the codes directly
+ * (asymmetric distance computation), so only the query keeps full precision.
+ * <p>
+ * Codes trade accuracy for memory, which is measured by the reconstruction error of the rows and by the recall of the
+ * nearest neighbours against exact search over the original table.
+ */
+public abstract class QuantizedEmbeddings {
+
+    private static final int MAGIC = 0x50325651;
+    private static final int VERSION = 1;
+
+    private static final Logger logger = LoggerFactory.getLogger(QuantizedEmbeddings.class);
+
+    final int dimension;
+    final String[] tokens;
+
+    QuantizedEmbeddings(int dimension, String[] tokens) {
+        this.dimension = dimension;
+        this.tokens = tokens;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public int size() {
+        return tokens.length;
+    }
+
+    public String token(int row) {
+        return tokens[row];
+    }
+
+    /**
+     * @return the number of bytes of the codes of all the rows (including the per table parameters, e.g. codebooks)
+     */
+    abstract long codeBytes();
+
+    /**
+     * decode a row
+     *
+     * @param row    the row
+     * @param vector the array to decode the (approximate, normalized) vector of the row to
+     */
+    abstract void decode(int row, float[] vector);
+
+    /**
+     * the {@code k} nearest neighbours of the given vector, by approximate cosine similarity
+     *
+     * @param query the query vector, which does not need to be normalized
+     * @param k     the number of neighbours
+     * @return the neighbours, by decreasing (approximate) similarity
+     */
+    public List<NearestNeighbourSearch.Neighbour> search(float[] query, int k) {
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("wrong query dimension " + query.length + " instead of " + dimension);
+        }
+        float[] normalized = query.clone();
+        VectorMath.normalize(normalized);
+        NearestNeighbourSearch.TopK topK = new NearestNeighbourSearch.TopK(k);
+        score(normalized, topK);
+        return topK.toNeighbours(tokens);
+    }
+
+    /**
+     * score all the rows against a normalized query
+     */
+    abstract void score(float[] query, NearestNeighbourSearch.TopK topK);
+
+    /**
+     * @param table the table the codes were computed from
+     * @return the mean squared distance between the normalized rows of the table and the decoded ones
+     */
+    double reconstructionError(WordVectorTable table) {
+        float[] original = new float[dimension];
+        float[] decoded = new float[dimension];
+        double error = 0;
+        for (int row = 0; row < size(); row++) {
+            normalizedRow(table, tokens[row], original);
+            decode(row, decoded);
+            error += VectorMath.distance2(original, 0, decoded, 0, dimension);
+        }
+        return size() == 0 ? 0 : error / size();
+    }
+
+    /**
+     * @param exact   the exact {@code k} nearest neighbours of each query, over the table the codes were computed from
+     * @param queries the query vectors
+     * @param k       the number of neighbours
+     * @return the average fraction of the exact {@code k} nearest neighbours found by the search over the codes
+     */
+    double recall(List<List<NearestNeighbourSearch.Neighbour>> exact, List<float[]> queries, int k) {
+        double recall = 0;
+        for (int q = 0; q < queries.size(); q++) {
+            float[] query = queries.get(q);
+            Set<String> expected = new HashSet<>();
+            for (NearestNeighbourSearch.Neighbour neighbour : exact.get(q)) {
+                expected.add(neighbour.getToken());
+            }
+            if (expected.isEmpty()) {
+                recall += 1;
+                continue;
+            }
+            int found = 0;
+            for (NearestNeighbourSearch.Neighbour neighbour : search(query, k)) {
+                if (expected.contains(neighbour.getToken())) {
+                    found++;
+                }
+            }
+            recall += (double) found / expected.size();
+        }
+        return queries.isEmpty() ? 1 : recall / queries.size();
+    }
+
+    /**
+     * @return the tokens of the given table, in row order
+     */
+    static String[] tokens(WordVectorTable table) {
+        String[] tokens = new String[table.size()];
+        Iterator<String> tokenIterator = table.tokens();
+        for (int row = 0; row < tokens.length; row++) {
+            tokens[row] = tokenIterator.next();
+        }
+        return tokens;
+    }
+
+    /**
+     * copy the normalized vector of a token of the given table to the given array
+     */
+    static void normalizedRow(WordVectorTable table, String token, float[] vector) {
+        WordVector wordVector = table.get(token);
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = wordVector.getAsFloat(i);
+        }
+        VectorMath.normalize(vector);
+    }
+
+    /**
+     * write the codes to a temporary file which replaces the given one once it is complete
+     *
+     * @param file the file
+     * @throws IOException if writing fails
+     */
+    void write(File file) throws IOException {
+        File tmpFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(this instanceof ProductQuantizedEmbeddings ? 1 : 0);
+            out.writeInt(dimension);
+            out.writeInt(tokens.length);
+            for (String token : tokens) {
+                out.writeUTF(token);
+            }
+            writeCodes(out);
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        logger.info("saved {} to {}", this, file);
+    }
+
+    abstract void writeCodes(DataOutputStream out) throws IOException;
+
+    /**
+     * read the codes written by {@link #write(File)}, e.g. the {@code pt-word-int8.bin} or {@code pt-sentence-pq.bin}
+     * files written by {@link Parse2Vec} with {@code -Dparse2vec.quantize=true}
+     *
+     * @param file the file
+     * @return the scalar or product quantized embeddings
+     * @throws IOException if the file cannot be read
+     */
+    public static QuantizedEmbeddings read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not quantized embeddings " + file);
+            }
+            int type = in.readByte();
+            int dimension = in.readInt();
+            String[] tokens = new String[in.readInt()];
+            for (int row = 0; row < tokens.length; row++) {
+                tokens[row] = in.readUTF();
+            }
+            switch (type) {
+                case 0:
+                    return ScalarQuantizedEmbeddings.readCodes(dimension, tokens, in);
+                case 1:
+                    return ProductQuantizedEmbeddings.readCodes(dimension, tokens, in);
+                default:
+                    throw new IOException("unknown quantization " + type + " of " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVectorTable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Scalar quantization of the (normalized) rows of an embedding table to one signed byte per dimension, 4x smaller than
+ * floats: each dimension has its own range, from the minimum to the maximum of its values, split in 256 steps.
+ * <p>
+ * A decoded value is {@code min + scale * (code + 128)}, so the dot product of a query with a row is a constant term
+ * of the query plus the dot product of the query, scaled by dimension, with the codes.
+ */
+class ScalarQuantizedEmbeddings extends QuantizedEmbeddings {
+
+    private final float[] min;
+    private final float[] scale;
+    private final byte[] codes;
+
+    private ScalarQuantizedEmbeddings(int dimension, String[] tokens, float[] min, float[] scale, byte[] codes) {
+        super(dimension, tokens);
+        this.min = min;
+        this.scale = scale;
+        this.codes = codes;
+    }
+
+    /**
+     * quantize the rows of a table, reading it twice: to find the range of each dimension, then to encode the rows
+     *
+     * @param table the table
+     * @return the quantized rows
+     */
+    static ScalarQuantizedEmbeddings quantize(WordVectorTable table) {
+        int dimension = table.dimension();
+        String[] tokens = tokens(table);
+        if ((long) tokens.length * dimension > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too many rows to quantize " + tokens.length);
+        }
+        float[] min = new float[dimension];
+        float[] max = new float[dimension];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        float[] vector = new float[dimension];
+        for (String token : tokens) {
+            normalizedRow(table, token, vector);
+            for (int i = 0; i < dimension; i++) {
+                min[i] = Math.min(min[i], vector[i]);
+                max[i] = Math.max(max[i], vector[i]);
+            }
+        }
+        float[] scale = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            if (tokens.length == 0) {
+                min[i] = 0;
+            } else {
+                scale[i] = (max[i] - min[i]) / 255;
+            }
+        }
+
+        byte[] codes = new byte[tokens.length * dimension];
+        for (int row = 0; row < tokens.length; row++) {
+            normalizedRow(table, tokens[row], vector);
+            for (int i = 0; i < dimension; i++) {
+                int code = scale[i] > 0 ? Math.round((vector[i] - min[i]) / scale[i]) : 0;
+                codes[row * dimension + i] = (byte) (Math.min(255, Math.max(0, code)) - 128);
+            }
+        }
+        return new ScalarQuantizedEmbeddings(dimension, tokens, min, scale, codes);
+    }
+
+    @Override
+    long codeBytes() {
+        return codes.length + 8L * dimension;
+    }
+
+    @Override
+    void decode(int row, float[] vector) {
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = min[i] + scale[i] * (codes[row * dimension + i] + 128);
+        }
+    }
+
+    @Override
+    void score(float[] query, NearestNeighbourSearch.TopK topK) {
+        float[] scaled = new float[dimension];
+        float constant = 0;
+        for (int i = 0; i < dimension; i++) {
+            scaled[i] = query[i] * scale[i];
+            constant += query[i] * (min[i] + 128 * scale[i]);
+        }
+        for (int row = 0, offset = 0; row < tokens.length; row++, offset += dimension) {
+            topK.add(row, constant + VectorMath.dot(scaled, codes, offset, dimension));
+        }
+    }
+
+    @Override
+    void writeCodes(DataOutputStream out) throws IOException {
+        for (int i = 0; i < dimension; i++) {
+            out.writeFloat(min[i]);
+            out.writeFloat(scale[i]);
+        }
+        out.write(codes);
+    }
+
+    static ScalarQuantizedEmbeddings readCodes(int dimension, String[] tokens, DataInputStream in) throws IOException {
+        float[] min = new float[dimension];
+        float[] scale = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            min[i] = in.readFloat();
+            scale[i] = in.readFloat();
+        }
+        byte[] codes = new byte[tokens.length * dimension];
+        in.readFully(codes);
+        return new ScalarQuantizedEmbeddings(dimension, tokens, min, scale, codes);
+    }
+
+    @Override
+    public String toString() {
+        return "ScalarQuantizedEmbeddings{" + "dimension=" + dimension + ", size=" + tokens.length + '}';
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.tteofili.parse2vec;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 128 bits (MD5) hash of the text of a sentence, used to detect exact duplicates without keeping their texts around
+ */
+final class SentenceHash {
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    });
+
+    private final long high;
+    private final long low;
+
+    SentenceHash(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    static SentenceHash of(String sentence) {
+        byte[] digest = DIGESTS.get().digest(sentence.getBytes(StandardCharsets.UTF_8));
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (digest[i] & 0xFF);
+            low = (low << 8) | (digest[i + 8] & 0xFF);
+        }
+        return new SentenceHash(high, low);
+    }
+
+    long getHigh() {
+        return high;
+    }
+
+    long getLow() {
+        return low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SentenceHash that = (SentenceHash) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        // the bits of a digest are already uniformly distributed
+        return (int) low;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
@@ -0,0 +1,326 @@
+package com.github.tteofili.parse2vec;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Lucene index of the sentences of a corpus, searched by keywords and re-ranked by parse2vec similarity.
+ * <p>
+ * Each sentence is a document holding its id, source, line and (analyzed) text, together with its normalized
+ * {@code pt-sentence} vector, stored as little endian floats in a {@link BinaryDocValuesField}. A search retrieves the
+ * top {@code n} documents matching any of the keywords, then scores each of them by the cosine similarity of its
+ * vector to the query embedding (e.g. the one of {@link Parse2VecModel#embed(String)}), reading the vectors in doc id
+ * order, and returns the best {@code k}.
+ * Instances are safe for use by multiple concurrent threads.
+ */
+public class SentenceIndex implements Closeable {
+
+    /**
+     * the directory of the index written by {@link Parse2Vec} with {@code -Dparse2vec.luceneIndex=true}
+     */
+    public static final String DEFAULT_DIRECTORY_NAME = "pt-sentence-index";
+
+    static final String ID = "id";
+    static final String SOURCE = "source";
+    static final String LINE = "line";
+    static final String TEXT = "text";
+    static final String VECTOR = "vector";
+
+    private final Directory directory;
+    private final DirectoryReader reader;
+    private final IndexSearcher searcher;
+    private final Analyzer analyzer;
+
+    /**
+     * open an index
+     *
+     * @param path the directory of the index
+     * @return the index
+     * @throws IOException if the index cannot be read
+     */
+    public static SentenceIndex open(Path path) throws IOException {
+        Directory directory = FSDirectory.open(path);
+        try {
+            return new SentenceIndex(directory, DirectoryReader.open(directory), analyzer());
+        } catch (IOException e) {
+            directory.close();
+            throw e;
+        }
+    }
+
+    private SentenceIndex(Directory directory, DirectoryReader reader, Analyzer analyzer) {
+        this.directory = directory;
+        this.reader = reader;
+        this.searcher = new IndexSearcher(reader);
+        this.analyzer = analyzer;
+    }
+
+    private static Analyzer analyzer() throws IOException {
+        try {
+            return AnalysisUtils.simpleAnalyzer();
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return the number of indexed sentences
+     */
+    public int size() {
+        return reader.numDocs();
+    }
+
+    /**
+     * search the sentences matching any of the given keywords, ranked by the similarity of their vectors to the given
+     * query embedding
+     *
+     * @param keywords       the keywords, analyzed as the indexed text
+     * @param queryEmbedding the query embedding, of the same dimension of the indexed vectors
+     * @param n              the number of lexical hits to re-rank
+     * @param k              the number of hits to return
+     * @return at most {@code k} hits, by decreasing similarity
+     * @throws IOException if the index cannot be read
+     */
+    public List<Hit> search(String keywords, float[] queryEmbedding, int n, int k) throws IOException {
+        BooleanQuery.Builder keywordQuery = new BooleanQuery.Builder();
+        int terms = 0;
+        try (TokenStream tokenStream = analyzer.tokenStream(TEXT, keywords)) {
+            CharTermAttribute term = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken() && terms < BooleanQuery.getMaxClauseCount()) {
+                keywordQuery.add(new TermQuery(new Term(TEXT, term.toString())), BooleanClause.Occur.SHOULD);
+                terms++;
+            }
+            tokenStream.end();
+        }
+        if (terms == 0) {
+            return new ArrayList<>();
+        }
+        ScoreDoc[] scoreDocs = searcher.search(keywordQuery.build(), n).scoreDocs;
+
+        float[] query = Arrays.copyOf(queryEmbedding, queryEmbedding.length);
+        VectorMath.normalize(query);
+        // doc values are iterators, so the hits are scored in doc id order
+        ScoreDoc[] byDoc = Arrays.copyOf(scoreDocs, scoreDocs.length);
+        Arrays.sort(byDoc, Comparator.comparingInt(scoreDoc -> scoreDoc.doc));
+        List<Hit> hits = new ArrayList<>(byDoc.length);
+        List<LeafReaderContext> leaves = reader.leaves();
+        BinaryDocValues vectors = null;
+        LeafReaderContext leaf = null;
+        for (ScoreDoc scoreDoc : byDoc) {
+            LeafReaderContext hitLeaf = leaves.get(ReaderUtil.subIndex(scoreDoc.doc, leaves));
+            if (hitLeaf != leaf) {
+                leaf = hitLeaf;
+                vectors = DocValues.getBinary(leaf.reader(), VECTOR);
+            }
+            float similarity = 0;
+            if (vectors.advanceExact(scoreDoc.doc - leaf.docBase)) {
+                BytesRef bytes = vectors.binaryValue();
+                if (bytes.length != query.length * 4) {
+                    throw new IOException("wrong size " + bytes.length / 4 + " of indexed vector instead of "
+                            + query.length);
+                }
+                similarity = VectorMath.dot(query, ByteBuffer.wrap(bytes.bytes, bytes.offset, bytes.length)
+                        .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer(), 0, query.length);
+            }
+            hits.add(new Hit(scoreDoc.doc, scoreDoc.score, similarity));
+        }
+        hits.sort(Comparator.comparingDouble((Hit hit) -> hit.similarity).reversed());
+        if (hits.size() > k) {
+            hits = new ArrayList<>(hits.subList(0, k));
+        }
+        for (Hit hit : hits) {
+            hit.load(searcher.doc(hit.doc));
+        }
+        return hits;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } finally {
+            directory.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SentenceIndex{" + directory + ", size=" + size() + '}';
+    }
+
+    /**
+     * a sentence matching a search
+     */
+    public static class Hit {
+
+        private final int doc;
+        private final float score;
+        private final float similarity;
+        private int id;
+        private String source;
+        private long line;
+        private String text;
+
+        Hit(int doc, float score, float similarity) {
+            this.doc = doc;
+            this.score = score;
+            this.similarity = similarity;
+        }
+
+        private void load(Document document) {
+            id = Integer.parseInt(document.get(ID));
+            source = document.get(SOURCE);
+            line = document.getField(LINE).numericValue().longValue();
+            text = document.get(TEXT);
+        }
+
+        /**
+         * @return the id of the sentence, i.e. its token in the {@code pt-sentence} tables
+         */
+        public int getId() {
+            return id;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return the lexical score of the sentence
+         */
+        public float getScore() {
+            return score;
+        }
+
+        /**
+         * @return the cosine similarity of the sentence vector to the query embedding
+         */
+        public float getSimilarity() {
+            return similarity;
+        }
+
+        @Override
+        public String toString() {
+            return id + "=" + source + ":" + line + " " + text + " (" + similarity + ")";
+        }
+    }
+
+    /**
+     * indexes the sentences whose vectors are added to it, looking their text up in the sentence metadata; a sentence
+     * which is already in the index replaces the existing one
+     */
+    static class Writer implements EmbeddingsSink {
+
+        private final Directory directory;
+        private final IndexWriter indexWriter;
+        private final SentenceMetadata.Reader sentenceMetadata;
+
+        /**
+         * @param path             the directory of the index
+         * @param sentenceMetadata the metadata of the sentences to index, which are added by increasing ids
+         * @param append           whether to add the sentences to an existing index, rather than overwriting it
+         * @throws IOException if the index cannot be opened
+         */
+        Writer(Path path, SentenceMetadata sentenceMetadata, boolean append) throws IOException {
+            this.directory = FSDirectory.open(path);
+            IndexWriterConfig config = new IndexWriterConfig(analyzer());
+            config.setOpenMode(append ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND : IndexWriterConfig.OpenMode.CREATE);
+            try {
+                this.indexWriter = new IndexWriter(directory, config);
+            } catch (IOException e) {
+                directory.close();
+                throw e;
+            }
+            try {
+                this.sentenceMetadata = sentenceMetadata.reader();
+            } catch (IOException e) {
+                try {
+                    indexWriter.close();
+                } finally {
+                    directory.close();
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void add(String token, float[] vector) throws IOException {
+            SentenceMetadata.Sentence sentence = sentenceMetadata.get(Integer.parseInt(token));
+            if (sentence == null) {
+                throw new IOException("no metadata for sentence " + token);
+            }
+            float[] normalized = Arrays.copyOf(vector, vector.length);
+            VectorMath.normalize(normalized);
+            ByteBuffer bytes = ByteBuffer.allocate(normalized.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.asFloatBuffer().put(normalized);
+
+            Document document = new Document();
+            document.add(new StringField(ID, token, Field.Store.YES));
+            document.add(new StoredField(SOURCE, sentence.getSource()));
+            document.add(new StoredField(LINE, sentence.getLine()));
+            document.add(new TextField(TEXT, sentence.getText(), Field.Store.YES));
+            document.add(new BinaryDocValuesField(VECTOR, new BytesRef(bytes.array())));
+            indexWriter.updateDocument(new Term(ID, token), document);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                sentenceMetadata.close();
+            } finally {
+                try {
+                    indexWriter.close();
+                } finally {
+                    directory.close();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "SentenceIndex.Writer{" + directory + '}';
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.github.tteofili.parse2vec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Side files describing the sentences of a corpus, which are identified elsewhere (e.g. as keys of the sentence
+ * embeddings) by compact integer ids, assigned in order starting from 0.
+ * <ul>
+ * <li>{@code <prefix>.tsv}: one line per sentence, holding the source file, the line number (starting from 1) within
+ * the source file and the text of the sentence, separated by tabs</li>
+ * <li>{@code <prefix>.idx}: one fixed size entry per sentence: the offset of its line in the TSV file and its
+ * {@link SentenceHash} (big endian longs), so that sentences can be looked up by id with a single read</li>
+ * </ul>
+ * A writer can start from any id, discarding the entries from that id on, so that a run can append the sentences of
+ * new files to the ones of the previous runs.
+ */
+class SentenceMetadata {
+
+    static final String DEFAULT_PREFIX = "pt-sentences";
+
+    static final int ENTRY_SIZE = 24;
+
+    private static final Logger logger = LoggerFactory.getLogger(SentenceMetadata.class);
+
+    private final File tsvFile;
+    private final File indexFile;
+
+    SentenceMetadata(String prefix) {
+        this.tsvFile = new File(prefix + ".tsv");
+        this.indexFile = new File(prefix + ".idx");
+    }
+
+    boolean exists() {
+        return tsvFile.exists() && indexFile.exists();
+    }
+
+    /**
+     * @return the number of sentences
+     */
+    int size() {
+        return indexFile.exists() ? (int) (indexFile.length() / ENTRY_SIZE) : 0;
+    }
+
+    /**
+     * read the hashes of the first sentences
+     *
+     * @param count the number of sentences
+     * @return a concurrent set holding the hashes of the sentences with ids lower than {@code count}
+     * @throws IOException if the index cannot be read or holds less than {@code count} sentences
+     */
+    Set<SentenceHash> hashes(int count) throws IOException {
+        Set<SentenceHash> hashes = Collections.newSetFromMap(new ConcurrentHashMap<>(Math.max(16, count * 2)));
+        if (count == 0) {
+            return hashes;
+        }
+        if (size() < count) {
+            throw new IOException("missing sentences in " + indexFile + ", expected " + count + " found " + size());
+        }
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE * 4096);
+            long remaining = (long) count * ENTRY_SIZE;
+            while (remaining > 0) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        throw new IOException("truncated sentence index " + indexFile);
+                    }
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    buffer.getLong();
+                    hashes.add(new SentenceHash(buffer.getLong(), buffer.getLong()));
+                }
+                remaining -= buffer.limit();
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * look up a sentence
+     *
+     * @param id the id of the sentence
+     * @return the sentence, or {@code null} if there is no sentence with the given id
+     * @throws IOException if the files cannot be read
+     */
+    Sentence get(int id) throws IOException {
+        if (id < 0 || id >= size()) {
+            return null;
+        }
+        long start;
+        long end;
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer entries = ByteBuffer.allocate(ENTRY_SIZE * 2);
+            read(channel, entries, (long) id * ENTRY_SIZE);
+            start = entries.getLong(0);
+            end = entries.limit() > ENTRY_SIZE ? entries.getLong(ENTRY_SIZE) : -1;
+        }
+        try (FileChannel channel = FileChannel.open(tsvFile.toPath(), StandardOpenOption.READ)) {
+            if (end < 0) {
+                end = channel.size();
+            }
+            ByteBuffer line = ByteBuffer.allocate((int) (end - start));
+            read(channel, line, start);
+            return sentence(id, new String(line.array(), 0, line.limit(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private Sentence sentence(int id, String line) throws IOException {
+        String[] fields = line.split("\t", 3);
+        if (fields.length < 3) {
+            throw new IOException("corrupted sentence " + id + " in " + tsvFile);
+        }
+        String text = fields[2].endsWith("\n") ? fields[2].substring(0, fields[2].length() - 1) : fields[2];
+        return new Sentence(id, fields[0], Long.parseLong(fields[1]), text);
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * open a reader for looking sentences up by increasing ids, e.g. while going through the sentences in id order
+     *
+     * @return the reader
+     * @throws IOException if the files cannot be opened
+     */
+    Reader reader() throws IOException {
+        return new Reader();
+    }
+
+    /**
+     * open a writer which assigns ids from {@code firstId}, discarding the sentences having such ids or greater ones
+     *
+     * @param firstId the id of the first sentence to add, at most {@link #size()}
+     * @return the writer
+     * @throws IOException if the files cannot be opened
+     */
+    Writer writer(int firstId) throws IOException {
+        return new Writer(firstId);
+    }
+
+    /**
+     * a sentence, as described by the metadata
+     */
+    static class Sentence {
+
+        private final int id;
+        private final String source;
+        private final long line;
+        private final String text;
+
+        Sentence(int id, String source, long line, String text) {
+            this.id = id;
+            this.source = source;
+            this.line = line;
+            this.text = text;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        String getSource() {
+            return source;
+        }
+
+        long getLine() {
+            return line;
+        }
+
+        String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return id + "=" + source + ":" + line + " " + text;
+        }
+    }
+
+    /**
+     * reads the sentences looked up by increasing ids sequentially from the metadata files, which stay open until the
+     * reader is closed; unlike {@link #get(int)}, a lookup costs no more than reading the sentence
+     */
+    class Reader implements Closeable {
+
+        private final int size;
+        private final DataInputStream index;
+        private final InputStream tsv;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private int nextId;
+        private long offset;
+
+        private Reader() throws IOException {
+            this.size = size();
+            this.index = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1 << 16));
+            try {
+                this.tsv = new BufferedInputStream(new FileInputStream(tsvFile), 1 << 16);
+            } catch (IOException e) {
+                index.close();
+                throw e;
+            }
+        }
+
+        /**
+         * look up a sentence
+         *
+         * @param id the id of the sentence, greater than the ones looked up before
+         * @return the sentence, or {@code null} if there is no sentence with the given id
+         * @throws IOException if the files cannot be read or the id is lower than a previous one
+         */
+        Sentence get(int id) throws IOException {
+            if (id < nextId) {
+                throw new IOException("sentence " + id + " looked up after sentence " + (nextId - 1));
+            }
+            if (id >= size) {
+                return null;
+            }
+            skip(index, (long) (id - nextId) * ENTRY_SIZE, indexFile);
+            long start = index.readLong();
+            skip(index, ENTRY_SIZE - 8, indexFile);
+            nextId = id + 1;
+            skip(tsv, start - offset, tsvFile);
+            line.reset();
+            for (int b = tsv.read(); b >= 0 && b != '\n'; b = tsv.read()) {
+                line.write(b);
+            }
+            offset = start + line.size() + 1;
+            return sentence(id, new String(line.toByteArray(), StandardCharsets.UTF_8));
+        }
+
+        private void skip(InputStream in, long bytes, File file) throws IOException {
+            while (bytes > 0) {
+                long skipped = in.skip(bytes);
+                if (skipped <= 0) {
+                    throw new IOException("truncated sentence metadata " + file);
+                }
+                bytes -= skipped;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                index.close();
+            } finally {
+                tsv.close();
+            }
+        }
+    }
+
+    /**
+     * appends sentences to the metadata files
+     */
+    class Writer implements Closeable {
+
+        private final OutputStream tsv;
+        private final DataOutputStream index;
+        private int nextId;
+        private long offset;
+        private boolean closed = false;
+
+        private Writer(int firstId) throws IOException {
+            if (firstId > size()) {
+                throw new IOException("cannot add sentences from " + firstId + " to the " + size() + " in " + indexFile);
+            }
+            long tsvLength = 0;
+            if (firstId > 0) {
+                try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+                    if (firstId < size()) {
+                        ByteBuffer entry = ByteBuffer.allocate(8);
+                        read(channel, entry, (long) firstId * ENTRY_SIZE);
+                        tsvLength = entry.getLong(0);
+                    } else {
+                        tsvLength = tsvFile.length();
+                    }
+                }
+            }
+            truncate(indexFile, (long) firstId * ENTRY_SIZE);
+            truncate(tsvFile, tsvLength);
+            this.nextId = firstId;
+            this.offset = tsvLength;
+            this.tsv = new BufferedOutputStream(new FileOutputStream(tsvFile, true), 1 << 16);
+            this.index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true), 1 << 16));
+        }
+
+        private void truncate(File file, long length) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+        }
+
+        /**
+         * add a sentence
+         *
+         * @param source the source of the sentence, e.g. its file
+         * @param line   the line of the sentence within its source
+         * @param text   the text of the sentence
+         * @param hash   the hash of the text
+         * @return the id of the sentence
+         * @throws IOException if writing fails
+         */
+        int add(String source, long line, String text, SentenceHash hash) throws IOException {
+            if (nextId == Integer.MAX_VALUE) {
+                throw new IOException("cannot add more than " + nextId + " sentences");
+            }
+            byte[] bytes = (source + '\t' + line + '\t' + text.replace('\n', ' ') + '\n').getBytes(StandardCharsets.UTF_8);
+            tsv.write(bytes);
+            index.writeLong(offset);
+            index.writeLong(hash.getHigh());
+            index.writeLong(hash.getLow());
+            offset += bytes.length;
+            return nextId++;
+        }
+
+        /**
+         * @return the number of sentences, including the ones added before this writer
+         */
+        int count() {
+            return nextId;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                tsv.close();
+            } finally {
+                index.close();
+            }
+            logger.info("described {} sentences in {}", nextId, tsvFile);
+        }
+    }
+}
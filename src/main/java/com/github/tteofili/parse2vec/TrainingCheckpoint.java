@@ -0,0 +1,164 @@
+package com.github.tteofili.parse2vec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of a training run which is needed to fold new documents into its outputs: the files processed so far, the
+ * parse tag accumulator (sums and counts) and the parse path word accumulator (word vector sums and ancestor tag
+ * counts), from which the tables are recomputed.
+ * <p>
+ * The same state is saved for each shard of a corpus by {@link Parse2VecShards}, to be merged with the ones of the
+ * other shards. The word embeddings are the ones saved alongside in the binary format (or the pre-trained ones the run
+ * was given), so that new sentences are embedded in the same space.
+ * A checkpoint is written to a temporary file which replaces the previous one only once it is complete.
+ */
+class TrainingCheckpoint {
+
+    static final String DEFAULT_FILE_NAME = "pt-checkpoint.bin";
+    static final String SHARD_FILE_NAME = "pt-shard.bin";
+    static final String WORD_VECTORS_FILE_NAME = "plain-vectors.bin";
+
+    private static final int MAGIC = 0x50325643;
+    private static final int VERSION = 3;
+
+    private static final Logger logger = LoggerFactory.getLogger(TrainingCheckpoint.class);
+
+    private final int layerSize;
+    private final Map<String, Long> files;
+    private final int sentences;
+    private final VectorAccumulator ptTags;
+    private final PathWordAccumulator pathWords;
+
+    /**
+     * @param layerSize the dimension of the embeddings
+     * @param files     the absolute paths of the processed files, with their last modification times
+     * @param sentences the number of (unique) sentences of the processed files
+     * @param ptTags    the parse tag accumulator
+     * @param pathWords the parse path word accumulator
+     */
+    TrainingCheckpoint(int layerSize, Map<String, Long> files, int sentences, VectorAccumulator ptTags,
+                       PathWordAccumulator pathWords) {
+        this.layerSize = layerSize;
+        this.files = files;
+        this.sentences = sentences;
+        this.ptTags = ptTags;
+        this.pathWords = pathWords;
+    }
+
+    int getLayerSize() {
+        return layerSize;
+    }
+
+    Map<String, Long> getFiles() {
+        return Collections.unmodifiableMap(files);
+    }
+
+    /**
+     * @return the number of sentences processed so far, which is also the id of the next sentence
+     */
+    int getSentences() {
+        return sentences;
+    }
+
+    VectorAccumulator getPTTags() {
+        return ptTags;
+    }
+
+    PathWordAccumulator getPathWords() {
+        return pathWords;
+    }
+
+    /**
+     * @return the given files which have not been processed yet, files which changed after having been processed are
+     * reported but not processed again
+     */
+    List<File> newFiles(List<File> corpusFiles) {
+        List<File> newFiles = new ArrayList<>();
+        for (File file : corpusFiles) {
+            Long lastModified = files.get(file.getAbsolutePath());
+            if (lastModified == null) {
+                newFiles.add(file);
+            } else if (lastModified != file.lastModified()) {
+                logger.warn("{} changed since it was processed, the changes will not be included", file);
+            }
+        }
+        return newFiles;
+    }
+
+    static Map<String, Long> fileStates(List<File> files) {
+        Map<String, Long> states = new LinkedHashMap<>();
+        for (File file : files) {
+            states.put(file.getAbsolutePath(), file.lastModified());
+        }
+        return states;
+    }
+
+    /**
+     * read a checkpoint
+     *
+     * @param file the checkpoint file
+     * @return the checkpoint, or {@code null} if the file does not exist
+     * @throws IOException if the file cannot be read
+     */
+    static TrainingCheckpoint read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a training checkpoint " + file);
+            }
+            int layerSize = in.readInt();
+            int fileCount = in.readInt();
+            Map<String, Long> files = new LinkedHashMap<>();
+            for (int i = 0; i < fileCount; i++) {
+                files.put(in.readUTF(), in.readLong());
+            }
+            int sentences = in.readInt();
+            return new TrainingCheckpoint(layerSize, files, sentences, VectorAccumulator.read(in),
+                    PathWordAccumulator.read(in));
+        }
+    }
+
+    void write(File file) throws IOException {
+        File tmpFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(layerSize);
+            out.writeInt(files.size());
+            for (Map.Entry<String, Long> entry : files.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.writeInt(sentences);
+            ptTags.write(out);
+            pathWords.write(out);
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        logger.info("saved checkpoint of {} files to {}", files.size(), file);
+    }
+
+    @Override
+    public String toString() {
+        return "TrainingCheckpoint{" + "layerSize=" + layerSize + ", files=" + files.size() + ", sentences=" + sentences
+                + ", ptTags=" + ptTags + ", pathWords=" + pathWords + '}';
+    }
+}
@@ -0,0 +1,219 @@
+package com.github.tteofili.parse2vec;
+
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+
+import java.util.Arrays;
+
+/**
+ * Truncated SVD of small, dense, float matrices, computing only the top k right singular vectors.
+ * <p>
+ * The matrices combined at each parse tree node have one row per child, so they are very short and wide; rather
+ * than decomposing the whole matrix, the top singular vectors are derived from the eigenvectors of its (tiny) Gram
+ * matrix, which are found with the cyclic Jacobi method, in double precision.
+ * Singular vectors are only defined up to their sign, so each returned vector has its largest (in absolute value)
+ * component made positive.
+ * Rank deficient inputs, whose singular vectors cannot be recovered from the Gram matrix, are delegated to a full
+ * commons-math {@link SingularValueDecomposition}.
+ */
+class TruncatedSVD {
+
+    private static final int MAX_SWEEPS = 64;
+    private static final double RANK_TOLERANCE = 1e-10;
+
+    /**
+     * top k right singular vectors of the given matrix
+     *
+     * @param matrix the matrix, as an array of rows of the same length
+     * @param k      the number of singular vectors
+     * @return the top {@code k} right singular vectors (the first {@code k} rows of {@code V^T}), by decreasing
+     * singular value
+     */
+    static float[][] getTruncatedVT(float[][] matrix, int k) {
+        int rows = matrix.length;
+        int columns = matrix[0].length;
+        if (k < 1 || k > Math.min(rows, columns)) {
+            throw new IllegalArgumentException("cannot compute " + k + " singular vectors of a " + rows + "x" + columns + " matrix");
+        }
+        boolean wide = rows <= columns;
+        int n = wide ? rows : columns;
+
+        // Gram matrix, A A^T for wide matrices, A^T A otherwise
+        double[][] gram = new double[n][n];
+        if (wide) {
+            for (int i = 0; i < rows; i++) {
+                for (int j = i; j < rows; j++) {
+                    double dot = 0;
+                    float[] a = matrix[i];
+                    float[] b = matrix[j];
+                    for (int c = 0; c < columns; c++) {
+                        dot += (double) a[c] * b[c];
+                    }
+                    gram[i][j] = dot;
+                    gram[j][i] = dot;
+                }
+            }
+        } else {
+            for (float[] row : matrix) {
+                for (int i = 0; i < columns; i++) {
+                    double ri = row[i];
+                    for (int j = i; j < columns; j++) {
+                        gram[i][j] += ri * row[j];
+                    }
+                }
+            }
+            for (int i = 0; i < columns; i++) {
+                for (int j = 0; j < i; j++) {
+                    gram[i][j] = gram[j][i];
+                }
+            }
+        }
+
+        double[][] eigenvectors = new double[n][n];
+        double[] eigenvalues = new double[n];
+        jacobi(gram, eigenvectors, eigenvalues);
+        int[] order = sortDescending(eigenvalues);
+
+        double largest = eigenvalues[order[0]];
+        if (largest <= 0 || eigenvalues[order[k - 1]] <= largest * RANK_TOLERANCE) {
+            return fullSVD(matrix, k);
+        }
+
+        float[][] vt = new float[k][columns];
+        double[] v = new double[columns];
+        for (int s = 0; s < k; s++) {
+            int e = order[s];
+            if (wide) {
+                // v = A^T u / sigma, the division is replaced by a normalization, which also absorbs rounding errors
+                Arrays.fill(v, 0);
+                for (int i = 0; i < rows; i++) {
+                    double u = eigenvectors[i][e];
+                    float[] row = matrix[i];
+                    for (int c = 0; c < columns; c++) {
+                        v[c] += u * row[c];
+                    }
+                }
+            } else {
+                for (int c = 0; c < columns; c++) {
+                    v[c] = eigenvectors[c][e];
+                }
+            }
+            store(v, vt[s]);
+        }
+        return vt;
+    }
+
+    /**
+     * normalize the given vector, fix its sign and store it as floats
+     */
+    private static void store(double[] v, float[] destination) {
+        double norm = 0;
+        int argMax = 0;
+        for (int c = 0; c < v.length; c++) {
+            norm += v[c] * v[c];
+            if (Math.abs(v[c]) > Math.abs(v[argMax])) {
+                argMax = c;
+            }
+        }
+        double scale = (v[argMax] < 0 ? -1 : 1) / Math.sqrt(norm);
+        for (int c = 0; c < v.length; c++) {
+            destination[c] = (float) (v[c] * scale);
+        }
+    }
+
+    private static float[][] fullSVD(float[][] matrix, int k) {
+        double[][] data = new double[matrix.length][matrix[0].length];
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[i].length; j++) {
+                data[i][j] = matrix[i][j];
+            }
+        }
+        RealMatrix vt = new SingularValueDecomposition(MatrixUtils.createRealMatrix(data)).getVT();
+        float[][] truncatedVT = new float[k][];
+        for (int s = 0; s < k; s++) {
+            truncatedVT[s] = new float[vt.getColumnDimension()];
+            store(vt.getRow(s), truncatedVT[s]);
+        }
+        return truncatedVT;
+    }
+
+    /**
+     * cyclic Jacobi eigenvalue algorithm for symmetric matrices
+     *
+     * @param a            the symmetric matrix, which is destroyed
+     * @param eigenvectors filled with the eigenvectors, as columns
+     * @param eigenvalues  filled with the eigenvalues
+     */
+    static void jacobi(double[][] a, double[][] eigenvectors, double[] eigenvalues) {
+        int n = a.length;
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(eigenvectors[i], 0);
+            eigenvectors[i][i] = 1;
+        }
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            double off = 0;
+            double diagonal = 0;
+            for (int p = 0; p < n; p++) {
+                diagonal += a[p][p] * a[p][p];
+                for (int q = p + 1; q < n; q++) {
+                    off += a[p][q] * a[p][q];
+                }
+            }
+            if (off <= 1e-32 * diagonal || off == 0) {
+                break;
+            }
+            for (int p = 0; p < n - 1; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    double apq = a[p][q];
+                    if (apq == 0) {
+                        continue;
+                    }
+                    double theta = (a[q][q] - a[p][p]) / (2 * apq);
+                    double t = (theta >= 0 ? 1 : -1) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+                    double c = 1 / Math.sqrt(t * t + 1);
+                    double s = t * c;
+                    for (int r = 0; r < n; r++) {
+                        double arp = a[r][p];
+                        double arq = a[r][q];
+                        a[r][p] = c * arp - s * arq;
+                        a[r][q] = s * arp + c * arq;
+                    }
+                    for (int r = 0; r < n; r++) {
+                        double apr = a[p][r];
+                        double aqr = a[q][r];
+                        a[p][r] = c * apr - s * aqr;
+                        a[q][r] = s * apr + c * aqr;
+                    }
+                    for (int r = 0; r < n; r++) {
+                        double vrp = eigenvectors[r][p];
+                        double vrq = eigenvectors[r][q];
+                        eigenvectors[r][p] = c * vrp - s * vrq;
+                        eigenvectors[r][q] = s * vrp + c * vrq;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            eigenvalues[i] = a[i][i];
+        }
+    }
+
+    private static int[] sortDescending(double[] values) {
+        int[] order = new int[values.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // insertion sort, n is tiny
+        for (int i = 1; i < order.length; i++) {
+            int current = order[i];
+            int j = i - 1;
+            while (j >= 0 && values[order[j]] < values[current]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = current;
+        }
+        return order;
+    }
+}
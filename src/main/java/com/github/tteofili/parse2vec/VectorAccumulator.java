@@ -0,0 +1,149 @@
+package com.github.tteofili.parse2vec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Accumulates, for each token, the sum of all the vectors it has been observed with, together with their count.
+ * <p>
+ * Updates happen in place on primitive arrays, means are only computed when the final table is requested, so that
+ * the outcome does not depend on the order of the updates and partial accumulators (e.g. from different workers) can
+ * be merged together.
+ */
+class VectorAccumulator {
+
+  private final DenseWordVectorTable sums;
+  private long[] counts = new long[16];
+
+  VectorAccumulator(int dimension) {
+    this.sums = new DenseWordVectorTable(dimension);
+  }
+
+  int dimension() {
+    return sums.dimension();
+  }
+
+  int size() {
+    return sums.size();
+  }
+
+  Iterator<String> tokens() {
+    return sums.tokens();
+  }
+
+  long count(String token) {
+    int row = sums.row(token);
+    return row >= 0 ? counts[row] : 0;
+  }
+
+  /**
+   * add an observation of the given vector for the given token
+   *
+   * @param token  the token
+   * @param vector the observed vector
+   */
+  void add(String token, float[] vector) {
+    add(token, vector, 1);
+  }
+
+  /**
+   * add {@code count} observations whose vectors sum to the given one
+   *
+   * @param token the token
+   * @param sum   the sum of the observed vectors
+   * @param count the number of observations
+   */
+  void add(String token, float[] sum, long count) {
+    int dimension = sums.dimension();
+    assert sum.length == dimension : "wrong size " + sum.length + " of vector for " + token;
+    int row = row(token);
+    float[] data = sums.data();
+    VectorMath.add(data, row * dimension, sum, 0, dimension);
+    counts[row] += count;
+  }
+
+  /**
+   * merge the observations of another accumulator into this one
+   *
+   * @param other the accumulator to merge
+   */
+  void merge(VectorAccumulator other) {
+    int dimension = sums.dimension();
+    assert other.dimension() == dimension : "cannot merge accumulators of dimension " + other.dimension() + " and " + dimension;
+    for (int otherRow = 0; otherRow < other.size(); otherRow++) {
+      int row = row(other.sums.token(otherRow));
+      float[] data = sums.data();
+      float[] otherData = other.sums.data();
+      VectorMath.add(data, row * dimension, otherData, otherRow * dimension, dimension);
+      counts[row] += other.counts[otherRow];
+    }
+  }
+
+  /**
+   * @return a table holding the mean vector of each token
+   */
+  DenseWordVectorTable means() {
+    int dimension = sums.dimension();
+    DenseWordVectorTable means = new DenseWordVectorTable(dimension, sums.size());
+    float[] mean = new float[dimension];
+    float[] data = sums.data();
+    for (int row = 0; row < sums.size(); row++) {
+      System.arraycopy(data, row * dimension, mean, 0, dimension);
+      VectorMath.divide(mean, 0, dimension, counts[row]);
+      means.put(sums.token(row), mean);
+    }
+    return means;
+  }
+
+  /**
+   * write the sums and counts of this accumulator, to be read back by {@link #read(DataInputStream)}
+   *
+   * @param out the output stream
+   * @throws IOException if writing fails
+   */
+  void write(DataOutputStream out) throws IOException {
+    int dimension = sums.dimension();
+    float[] data = sums.data();
+    out.writeInt(dimension);
+    out.writeInt(sums.size());
+    for (int row = 0; row < sums.size(); row++) {
+      out.writeUTF(sums.token(row));
+      out.writeLong(counts[row]);
+      for (int i = row * dimension; i < (row + 1) * dimension; i++) {
+        out.writeFloat(data[i]);
+      }
+    }
+  }
+
+  static VectorAccumulator read(DataInputStream in) throws IOException {
+    int dimension = in.readInt();
+    int size = in.readInt();
+    VectorAccumulator accumulator = new VectorAccumulator(dimension);
+    float[] sum = new float[dimension];
+    for (int row = 0; row < size; row++) {
+      String token = in.readUTF();
+      long count = in.readLong();
+      for (int i = 0; i < dimension; i++) {
+        sum[i] = in.readFloat();
+      }
+      accumulator.add(token, sum, count);
+    }
+    return accumulator;
+  }
+
+  private int row(String token) {
+    int row = sums.add(token);
+    if (row == counts.length) {
+      counts = Arrays.copyOf(counts, counts.length * 2);
+    }
+    return row;
+  }
+
+  @Override
+  public String toString() {
+    return "VectorAccumulator{" + "dimension=" + sums.dimension() + ", size=" + sums.size() + '}';
+  }
+}
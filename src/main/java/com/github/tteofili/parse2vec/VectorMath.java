@@ -0,0 +1,165 @@
+package com.github.tteofili.parse2vec;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Kernels for the small (tens to hundreds of dimensions) dense vectors of the embedding tables, working in place on
+ * {@code float[]} arrays; a vector can be a whole array or a row of a row major matrix, given by its offset.
+ * <p>
+ * The loops are plain counted loops over arrays, with no calls nor branches in their bodies, which the JIT unrolls and
+ * compiles to SIMD instructions. Reductions (dot products) are split over four independent accumulators, as floating
+ * point additions cannot be reordered by the JIT, so the result may differ from a sequential sum by rounding.
+ */
+class VectorMath {
+
+    /**
+     * {@code x += y}
+     */
+    static void add(float[] x, float[] y) {
+        add(x, 0, y, 0, x.length);
+    }
+
+    /**
+     * add a vector to another one
+     *
+     * @param x       the array holding the vector to add to
+     * @param xOffset the offset of the vector within {@code x}
+     * @param y       the array holding the vector to add
+     * @param yOffset the offset of the vector within {@code y}
+     * @param length  the dimension of the vectors
+     */
+    static void add(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            x[xOffset + i] += y[yOffset + i];
+        }
+    }
+
+    /**
+     * {@code x *= factor}
+     */
+    static void scale(float[] x, int offset, int length, float factor) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] *= factor;
+        }
+    }
+
+    /**
+     * {@code x /= divisor}, e.g. to turn a sum of {@code divisor} vectors into their mean
+     */
+    static void divide(float[] x, int offset, int length, float divisor) {
+        for (int i = offset; i < offset + length; i++) {
+            x[i] /= divisor;
+        }
+    }
+
+    /**
+     * dot product of two vectors
+     *
+     * @param x       the array holding the first vector
+     * @param xOffset the offset of the vector within {@code x}
+     * @param y       the array holding the second vector
+     * @param yOffset the offset of the vector within {@code y}
+     * @param length  the dimension of the vectors
+     * @return the dot product
+     */
+    static float dot(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (int upperBound = length & ~3; i < upperBound; i += 4) {
+            s0 += x[xOffset + i] * y[yOffset + i];
+            s1 += x[xOffset + i + 1] * y[yOffset + i + 1];
+            s2 += x[xOffset + i + 2] * y[yOffset + i + 2];
+            s3 += x[xOffset + i + 3] * y[yOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += x[xOffset + i] * y[yOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * dot product of a vector and a vector read in place from a (e.g. memory mapped) buffer, summed in the same order
+     * as {@link #dot(float[], int, float[], int, int)}
+     */
+    static float dot(float[] x, FloatBuffer y, int yOffset, int length) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (int upperBound = length & ~3; i < upperBound; i += 4) {
+            s0 += x[i] * y.get(yOffset + i);
+            s1 += x[i + 1] * y.get(yOffset + i + 1);
+            s2 += x[i + 2] * y.get(yOffset + i + 2);
+            s3 += x[i + 3] * y.get(yOffset + i + 3);
+        }
+        for (; i < length; i++) {
+            s0 += x[i] * y.get(yOffset + i);
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * dot product of a vector and a vector of (e.g. quantized) bytes, summed in the same order as
+     * {@link #dot(float[], int, float[], int, int)}
+     */
+    static float dot(float[] x, byte[] y, int yOffset, int length) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (int upperBound = length & ~3; i < upperBound; i += 4) {
+            s0 += x[i] * y[yOffset + i];
+            s1 += x[i + 1] * y[yOffset + i + 1];
+            s2 += x[i + 2] * y[yOffset + i + 2];
+            s3 += x[i + 3] * y[yOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += x[i] * y[yOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * @return the squared euclidean distance of two vectors
+     */
+    static float distance2(float[] x, int xOffset, float[] y, int yOffset, int length) {
+        float sum = 0;
+        for (int i = 0; i < length; i++) {
+            float d = x[xOffset + i] - y[yOffset + i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    /**
+     * @return the euclidean norm of the given vector, summing the squares in double precision
+     */
+    static double norm(float[] x, int offset, int length) {
+        double sum = 0;
+        for (int i = offset; i < offset + length; i++) {
+            sum += x[i] * x[i];
+        }
+        return Math.sqrt(sum);
+    }
+
+    static void normalize(float[] x) {
+        normalize(x, 0, x.length);
+    }
+
+    /**
+     * scale the given vector to unit length, zero vectors are left unchanged
+     */
+    static void normalize(float[] x, int offset, int length) {
+        double norm = norm(x, offset, length);
+        if (norm > 0) {
+            for (int i = offset; i < offset + length; i++) {
+                x[i] = (float) (x[i] / norm);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVector;
+import opennlp.tools.util.wordvector.WordVectorTable;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Iterator;
+
+/**
+ * {@link WordVectorTable} view of DL4J {@link WordVectors}, e.g. a trained or deserialized Word2Vec model
+ */
+class Word2VecWordVectorTable implements WordVectorTable {
+
+  private final WordVectors wordVectors;
+  private final int dimension;
+
+  Word2VecWordVectorTable(WordVectors wordVectors) {
+    this.wordVectors = wordVectors;
+    this.dimension = wordVectors.lookupTable().layerSize();
+  }
+
+  @Override
+  public WordVector get(String token) {
+    if (token == null || !wordVectors.hasWord(token)) {
+      return null;
+    }
+    INDArray vector = wordVectors.getWordVectorMatrix(token);
+    return vector != null ? new FloatArrayVector(vector.toFloatVector()) : null;
+  }
+
+  @Override
+  public Iterator<String> tokens() {
+    // WordVectors exposes a raw VocabCache, whose words would only be a raw Collection
+    VocabCache<?> vocab = wordVectors.vocab();
+    return vocab.words().iterator();
+  }
+
+  @Override
+  public int size() {
+    return wordVectors.vocab().numWords();
+  }
+
+  @Override
+  public int dimension() {
+    return dimension;
+  }
+}
@@ -0,0 +1,74 @@
+package com.github.tteofili.parse2vec;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link AsyncEmbeddingsSink}
+ */
+public class AsyncEmbeddingsSinkTest {
+
+    @Test
+    public void testStreamedOutputs() throws Exception {
+        Random random = new Random(42);
+        DenseWordVectorTable table = new DenseWordVectorTable(5);
+        try (EmbeddingsSink sink = new AsyncEmbeddingsSink(EmbeddingsSink.of(
+                new EmbeddingsExporter.Writer("target/test-sink-streamed", 3, 1, false),
+                new BinaryEmbeddings.Writer(Paths.get("target/test-sink-streamed-vectors.bin"), 5)), 8)) {
+            for (int i = 0; i < 2000; i++) {
+                float[] vector = new float[5];
+                for (int j = 0; j < vector.length; j++) {
+                    vector[j] = (float) random.nextGaussian();
+                }
+                table.put(Integer.toString(i), vector);
+                sink.add(Integer.toString(i), vector);
+            }
+        }
+
+        // the streamed outputs are the same as the ones of the whole table
+        EmbeddingsExporter.writeEmbeddings(table, "target/test-sink-table", 3, 1, null, 1);
+        for (String suffix : new String[]{"-vectors.txt", "-vectors.tsv", "-metadata.tsv"}) {
+            assertArrayEquals(suffix, Files.readAllBytes(Paths.get("target/test-sink-table" + suffix)),
+                    Files.readAllBytes(Paths.get("target/test-sink-streamed" + suffix)));
+        }
+        MappedWordVectorTable binary = BinaryEmbeddings.open(Paths.get("target/test-sink-streamed-vectors.bin"));
+        assertEquals(table.size(), binary.size());
+        for (int row = 0; row < table.size(); row++) {
+            assertEquals(table.token(row), binary.token(row));
+            for (int i = 0; i < 5; i++) {
+                assertEquals(table.get(table.token(row)).getAsFloat(i), binary.vector(row).getAsFloat(i), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void testWriterFailure() throws Exception {
+        AsyncEmbeddingsSink sink = new AsyncEmbeddingsSink(new EmbeddingsSink() {
+            @Override
+            public void add(String token, float[] vector) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void close() {
+            }
+        }, 2);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                sink.add(Integer.toString(i), new float[1]);
+            }
+            sink.close();
+            fail("the failure of the writer should be rethrown");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVector;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BinaryEmbeddings}
+ */
+public class BinaryEmbeddingsTest {
+
+    @Test
+    public void testWriteAndMap() throws Exception {
+        DenseWordVectorTable table = new DenseWordVectorTable(3);
+        for (int i = 0; i < 1000; i++) {
+            table.put("token-" + i, new float[]{i, -i, i / 3f});
+        }
+        table.put("caffè", new float[]{0.1f, 0.2f, 0.3f});
+        table.put("", new float[]{1, 2, 3});
+
+        BinaryEmbeddings.writeEmbeddingsAsBinary(table, "target/test-binary");
+        MappedWordVectorTable mapped = BinaryEmbeddings.open(Paths.get("target/test-binary-vectors.bin"));
+
+        assertEquals(table.size(), mapped.size());
+        assertEquals(table.dimension(), mapped.dimension());
+        assertNull(mapped.get("missing"));
+        Iterator<String> expectedTokens = table.tokens();
+        Iterator<String> tokens = mapped.tokens();
+        while (expectedTokens.hasNext()) {
+            String token = expectedTokens.next();
+            assertEquals(token, tokens.next());
+            WordVector expected = table.get(token);
+            WordVector actual = mapped.get(token);
+            for (int i = 0; i < table.dimension(); i++) {
+                assertEquals(expected.getAsFloat(i), actual.getAsFloat(i), 0f);
+            }
+            assertEquals(expected.getAsFloat(2), actual.toFloatBuffer().get(2), 0f);
+        }
+    }
+
+    @Test
+    public void testAppender() throws Exception {
+        Files.deleteIfExists(Paths.get("target/test-append-vectors.bin"));
+        try (BinaryEmbeddings.Writer writer = BinaryEmbeddings.appender("target/test-append", 2)) {
+            writer.add("foo", new float[]{1f, 2f});
+            writer.add("bar", new float[]{3f, 4f});
+        }
+
+        try (BinaryEmbeddings.Writer writer = BinaryEmbeddings.appender("target/test-append", 2)) {
+            assertTrue(writer.contains("foo"));
+            assertTrue(writer.contains("bar"));
+            assertFalse(writer.contains("baz"));
+            writer.add("baz", new float[]{5f, 6f});
+            // the existing file is only replaced once the writer is closed
+            assertEquals(2, BinaryEmbeddings.open(Paths.get("target/test-append-vectors.bin")).size());
+        }
+
+        MappedWordVectorTable mapped = BinaryEmbeddings.open(Paths.get("target/test-append-vectors.bin"));
+        assertEquals(3, mapped.size());
+        assertEquals("foo", mapped.token(0));
+        assertEquals("baz", mapped.token(2));
+        assertEquals(3f, mapped.get("bar").getAsFloat(0), 0f);
+        assertEquals(6f, mapped.get("baz").getAsFloat(1), 0f);
+        assertEquals(2f, mapped.get("foo").getAsFloat(1), 0f);
+    }
+
+    @Test(expected = IOException.class)
+    public void testAppenderWithDifferentDimension() throws Exception {
+        Files.deleteIfExists(Paths.get("target/test-append-dimension-vectors.bin"));
+        try (BinaryEmbeddings.Writer writer = BinaryEmbeddings.appender("target/test-append-dimension", 2)) {
+            writer.add("foo", new float[]{1f, 2f});
+        }
+        BinaryEmbeddings.appender("target/test-append-dimension", 3);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFile() throws Exception {
+        Path path = Paths.get("target/test-invalid-vectors.bin");
+        Files.write(path, new byte[100]);
+        BinaryEmbeddings.open(path);
+    }
+}
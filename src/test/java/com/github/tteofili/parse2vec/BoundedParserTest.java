@@ -0,0 +1,177 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.cmdline.parser.ParserTool;
+import opennlp.tools.parser.AbstractBottomUpParser;
+import opennlp.tools.parser.Parse;
+import opennlp.tools.parser.ParserModel;
+import opennlp.tools.parser.lang.en.HeadRules;
+import opennlp.tools.util.ObjectStreamUtils;
+import opennlp.tools.util.TrainingParameters;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BoundedParser}
+ */
+public class BoundedParserTest {
+
+    private static final String SENTENCE = "The dog barks at the cat .";
+
+    private static ParserModel model;
+
+    @BeforeClass
+    public static void trainModel() throws Exception {
+        // a toy model, learned from the test trees, is enough to exercise the limits
+        HeadRules headRules = new HeadRules(new StringReader(
+                "5 S 1 VP NP S\n5 VP 1 VBZ VBP VP\n6 NP 0 NN NNS PRP NP\n4 PP 1 IN PP\n"));
+        List<Parse> parses = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            for (String tree : Parse2VecTest.TREES) {
+                parses.add(Parse.parseParse(tree));
+            }
+        }
+        TrainingParameters parameters = new TrainingParameters();
+        for (String component : new String[]{"build", "check", "tagger", "chunker"}) {
+            parameters.put(component, TrainingParameters.CUTOFF_PARAM, 0);
+            parameters.put(component, TrainingParameters.ITERATIONS_PARAM, 20);
+        }
+        parameters.put("dict", TrainingParameters.CUTOFF_PARAM, 0);
+        model = opennlp.tools.parser.chunking.Parser.train("en", ObjectStreamUtils.createObjectStream(parses),
+                headRules, parameters);
+    }
+
+    @Test
+    public void testParseWithinLimits() {
+        BoundedParser parser = new BoundedParser(model, 100, 0, 1000);
+        Parse parse = ParserTool.parseLine(SENTENCE, parser, 1)[0];
+        assertEquals(BoundedParser.Outcome.PARSED, parser.getOutcome());
+        assertEquals(AbstractBottomUpParser.TOP_NODE, parse.getType());
+        assertTokens(parse);
+    }
+
+    @Test
+    public void testShallowTreeOfLongSentences() {
+        BoundedParser parser = new BoundedParser(model, 3, 0, 1000);
+        Parse parse = ParserTool.parseLine(SENTENCE, parser, 1)[0];
+        assertEquals(BoundedParser.Outcome.TOO_LONG, parser.getOutcome());
+        assertShallow(parse);
+    }
+
+    @Test
+    public void testShallowTreeOfTimedOutSentences() {
+        BoundedParser parser = new BoundedParser(model, 100, 1, 1000);
+        Parse parse = ParserTool.parseLine(SENTENCE, parser, 1)[0];
+        assertEquals(BoundedParser.Outcome.TIMED_OUT, parser.getOutcome());
+        assertShallow(parse);
+    }
+
+    @Test
+    public void testLimitsAfterTimeout() {
+        String shortSentence = "The dog barks .";
+        BoundedParser parser = new BoundedParser(model, 4, 1, 1000);
+        Parse parse = ParserTool.parseLine(shortSentence, parser, 1)[0];
+        assertEquals(BoundedParser.Outcome.TIMED_OUT, parser.getOutcome());
+        assertShallow(parse, shortSentence);
+
+        // the next sentences are bounded by the same limits, regardless of the timeout
+        Parse longParse = ParserTool.parseLine(SENTENCE, parser, 1)[0];
+        assertEquals(BoundedParser.Outcome.TOO_LONG, parser.getOutcome());
+        assertEquals(show(ParserTool.parseLine(SENTENCE, new BoundedParser(model, 4, 1, 1000), 1)[0]),
+                show(longParse));
+        Parse reparsed = ParserTool.parseLine(shortSentence, parser, 1)[0];
+        assertEquals(BoundedParser.Outcome.TIMED_OUT, parser.getOutcome());
+        assertEquals(show(parse), show(reparsed));
+    }
+
+    @Test
+    public void testSkipVeryLongSentences() {
+        BoundedParser parser = new BoundedParser(model, 3, 0, 5);
+        Parse[] parses = ParserTool.parseLine(SENTENCE, parser, 1);
+        assertEquals(BoundedParser.Outcome.SKIPPED, parser.getOutcome());
+        assertNull(parses[0]);
+    }
+
+    @Test
+    public void testShallowTreesAreEmbedded() throws Exception {
+        int layerSize = 4;
+        BoundedParser parser = new BoundedParser(model, 3, 0, 1000);
+        Parse parse = ParserTool.parseLine(SENTENCE, parser, 1)[0];
+        LuceneTokenizerFactory tokenizerFactory = new LuceneTokenizerFactory(AnalysisUtils.simpleAnalyzer());
+        MapWordVectorTable ptEmbeddings = new MapWordVectorTable(new HashMap<>());
+        MapWordVectorTable wordEmbeddings = new MapWordVectorTable(new HashMap<>());
+        Parse2VecTest.addRandomVectors(parse, ptEmbeddings, wordEmbeddings, tokenizerFactory, layerSize, new Random(42));
+        float[] vector = Parse2VecUtils.getPTPathSentenceVector(new Parse[]{parse}, ptEmbeddings, wordEmbeddings, 3,
+                Parse2Vec.Method.CLUSTER, layerSize, tokenizerFactory);
+        assertNotNull(vector);
+        assertEquals(layerSize, vector.length);
+    }
+
+    @Test
+    public void testSkippedSentencesAreEmbeddedAsZeros() throws Exception {
+        int layerSize = 4;
+        LuceneTokenizerFactory tokenizerFactory = new LuceneTokenizerFactory(AnalysisUtils.simpleAnalyzer());
+        Parse2VecModel parse2VecModel = new Parse2VecModel(model, new DenseWordVectorTable(layerSize),
+                new DenseWordVectorTable(layerSize), tokenizerFactory);
+        StringBuilder sentence = new StringBuilder("The");
+        for (int i = 0; i < BoundedParser.MAX_FALLBACK_TOKENS; i++) {
+            sentence.append(" dog");
+        }
+        assertArrayEquals(new float[layerSize], parse2VecModel.embed(sentence.toString()), 0f);
+        assertEquals(layerSize, parse2VecModel.embed(SENTENCE).length);
+    }
+
+    /**
+     * a {@code TOP} node, whose children are either chunks of POS tags or POS tags, covering all the tokens
+     */
+    private static void assertShallow(Parse parse) {
+        assertShallow(parse, SENTENCE);
+    }
+
+    private static void assertShallow(Parse parse, String sentence) {
+        assertEquals(AbstractBottomUpParser.TOP_NODE, parse.getType());
+        int chunks = 0;
+        for (Parse child : parse.getChildren()) {
+            assertEquals(parse, child.getParent());
+            if (!child.isPosTag()) {
+                chunks++;
+                for (Parse tag : child.getChildren()) {
+                    assertTrue(tag.isPosTag());
+                    assertEquals(child, tag.getParent());
+                }
+            }
+        }
+        assertTrue(chunks > 0);
+        assertTokens(parse, sentence);
+    }
+
+    private static String show(Parse parse) {
+        StringBuffer tree = new StringBuffer();
+        parse.show(tree);
+        return tree.toString();
+    }
+
+    private static void assertTokens(Parse parse) {
+        assertTokens(parse, SENTENCE);
+    }
+
+    private static void assertTokens(Parse parse, String sentence) {
+        Parse[] tagNodes = parse.getTagNodes();
+        String[] tokens = new String[tagNodes.length];
+        for (int i = 0; i < tagNodes.length; i++) {
+            tokens[i] = tagNodes[i].getCoveredText();
+        }
+        assertArrayEquals(sentence.split(" "), tokens);
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.tteofili.parse2vec;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CorpusReader}
+ */
+public class CorpusReaderTest {
+
+    @Test
+    public void testRecursiveGzipLines() throws Exception {
+        File root = Files.createTempDirectory(new File("target").toPath(), "corpus").toFile();
+        File nested = new File(root, "nested");
+        assertTrue(nested.mkdir());
+        Files.write(new File(root, "a.txt").toPath(), "first line\nsecond line\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(root, ".hidden").toPath(), "hidden line\n".getBytes(StandardCharsets.UTF_8));
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(new File(nested, "b.txt.gz")))) {
+            out.write("compressed line è\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        CorpusReader corpusReader = new CorpusReader(root, StandardCharsets.UTF_8);
+        assertEquals(2, corpusReader.getFiles().size());
+
+        List<String> lines = new ArrayList<>();
+        List<String> sources = new ArrayList<>();
+        try (CorpusReader.Lines iterator = corpusReader.lines()) {
+            while (iterator.hasNext()) {
+                lines.add(iterator.next());
+                sources.add(iterator.getFile().getName() + ":" + iterator.getLineNumber());
+            }
+        }
+        assertEquals(Arrays.asList("first line", "second line", "compressed line è"), lines);
+        assertEquals(Arrays.asList("a.txt:1", "a.txt:2", "b.txt.gz:1"), sources);
+    }
+}
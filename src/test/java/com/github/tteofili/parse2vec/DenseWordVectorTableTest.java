@@ -0,0 +1,46 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVector;
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link DenseWordVectorTable}
+ */
+public class DenseWordVectorTableTest {
+
+    @Test
+    public void testPutGetAndGrow() {
+        DenseWordVectorTable table = new DenseWordVectorTable(3);
+        for (int i = 0; i < 1000; i++) {
+            table.put("token-" + i, new float[]{i, i + 1, i + 2});
+        }
+        table.put("token-10", new float[]{-1, -2, -3});
+
+        assertEquals(1000, table.size());
+        assertEquals(3, table.dimension());
+        assertNull(table.get("missing"));
+        WordVector vector = table.get("token-999");
+        assertEquals(999f, vector.getAsFloat(0), 0f);
+        assertEquals(1001f, vector.getAsFloat(2), 0f);
+        assertEquals(-2f, table.get("token-10").getAsFloat(1), 0f);
+
+        Iterator<String> tokens = table.tokens();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("token-" + i, tokens.next());
+        }
+    }
+
+    @Test
+    public void testNormalize() {
+        DenseWordVectorTable table = new DenseWordVectorTable(2);
+        table.put("foo", new float[]{3, 4});
+        table.normalize();
+        assertEquals(0.6f, table.get("foo").getAsFloat(0), 1e-6);
+        assertEquals(0.8f, table.get("foo").getAsFloat(1), 1e-6);
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.tteofili.parse2vec;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link EmbeddingsExporter}
+ */
+public class EmbeddingsExporterTest {
+
+    @Test
+    public void testAppendRounded() {
+        Random random = new Random(42);
+        EmbeddingsExporter.Bytes bytes = new EmbeddingsExporter.Bytes();
+        float[] values = new float[]{0f, -0f, 1f, -1f, 0.0004f, -0.0005f, 0.0015f, 1e-8f, 12345678.9f, -9999999.99f,
+                Float.NaN, Float.POSITIVE_INFINITY, 0.05f, 100.25f};
+        for (int decimals = 0; decimals <= 10; decimals++) {
+            double rounding = Math.pow(10, decimals);
+            for (int i = 0; i < 100000; i++) {
+                float value = i < values.length ? values[i] : (float) (random.nextGaussian() * Math.pow(10, random.nextInt(8) - 3));
+                bytes.clear();
+                bytes.appendRounded(value, decimals, rounding);
+                String expected = String.valueOf(Math.round(value * rounding) / rounding);
+                assertEquals(expected, new String(bytes.bytes(), 0, bytes.length(), StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    @Test
+    public void testSSVAndTSV() throws Exception {
+        Random random = new Random(42);
+        DenseWordVectorTable table = new DenseWordVectorTable(5);
+        for (int i = 0; i < 2000; i++) {
+            float[] vector = new float[5];
+            for (int j = 0; j < vector.length; j++) {
+                vector[j] = (float) random.nextGaussian();
+            }
+            table.put("token " + i, vector);
+        }
+
+        ExecutorService executor = Parse2Vec.newExecutor(3);
+        try {
+            EmbeddingsExporter.writeEmbeddings(table, "target/test-exporter", 3, 1, executor, 3);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<String> ssv = new ArrayList<>();
+        List<String> tsv = new ArrayList<>();
+        List<String> metadata = new ArrayList<>();
+        for (int row = 0; row < table.size(); row++) {
+            StringBuilder ssvLine = new StringBuilder(table.token(row)).append('\t');
+            StringBuilder tsvLine = new StringBuilder();
+            for (int j = 0; j < table.dimension(); j++) {
+                float f = table.vector(row).getAsFloat(j);
+                ssvLine.append(String.valueOf(Math.round(f * 1000d) / 1000d)).append('\t');
+                tsvLine.append(String.valueOf(Math.round(f * 10d) / 10d)).append('\t');
+            }
+            ssv.add(ssvLine.toString());
+            tsv.add(tsvLine.toString());
+            metadata.add(table.token(row));
+        }
+        assertEquals(ssv, Files.readAllLines(Paths.get("target/test-exporter-vectors.txt")));
+        assertEquals(tsv, Files.readAllLines(Paths.get("target/test-exporter-vectors.tsv")));
+        assertEquals(metadata, Files.readAllLines(Paths.get("target/test-exporter-metadata.tsv")));
+    }
+}
@@ -1,9 +1,20 @@
 package com.github.tteofili.parse2vec;
 
+import opennlp.tools.util.wordvector.WordVector;
+import opennlp.tools.util.wordvector.WordVectorTable;
 import org.junit.Test;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.HashMap;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 public class EmbeddingsUtilsTest {
 
     @Test
@@ -26,4 +37,33 @@ public class EmbeddingsUtilsTest {
         EmbeddingsUtils.writeEmbeddingsAsTSV(wvt, prefix, decimals);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testLoadWordVectors() throws Exception {
+        File textFile = new File("target/pretrained-vectors.txt");
+        Files.write(textFile.toPath(), Arrays.asList("foo 0.5 -1.0 0.25", "bar 1.0 2.0 3.0"), StandardCharsets.UTF_8);
+
+        WordVectorTable text = EmbeddingsUtils.loadWordVectors(textFile);
+        assertTrue(text instanceof Word2VecWordVectorTable);
+        assertEquals(2, text.size());
+        assertEquals(3, text.dimension());
+        assertArrayEquals(new float[]{0.5f, -1f, 0.25f}, toArray(text.get("foo")), 1e-6f);
+        assertNull(text.get("baz"));
+
+        // the binary copy of the vectors is memory mapped
+        BinaryEmbeddings.writeEmbeddingsAsBinary(text, "target/pretrained");
+        WordVectorTable binary = EmbeddingsUtils.loadWordVectors(new File("target/pretrained-vectors.bin"));
+        assertTrue(binary instanceof MappedWordVectorTable);
+        assertEquals(2, binary.size());
+        assertEquals(3, binary.dimension());
+        assertArrayEquals(toArray(text.get("foo")), toArray(binary.get("foo")), 0f);
+        assertArrayEquals(toArray(text.get("bar")), toArray(binary.get("bar")), 0f);
+        assertNull(binary.get("baz"));
+    }
+
+    private static float[] toArray(WordVector wordVector) {
+        float[] array = new float[wordVector.dimension()];
+        wordVector.toFloatBuffer().get(array);
+        return array;
+    }
+
+}
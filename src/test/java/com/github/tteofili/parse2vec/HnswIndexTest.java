@@ -0,0 +1,88 @@
+package com.github.tteofili.parse2vec;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link HnswIndex} and {@link MappedHnswIndex}
+ */
+public class HnswIndexTest {
+
+    @Test
+    public void testIncrementalBuildSaveLoadAndMap() throws Exception {
+        int dimension = 16;
+        Random random = new Random(42);
+        DenseWordVectorTable first = new DenseWordVectorTable(dimension);
+        DenseWordVectorTable second = new DenseWordVectorTable(dimension);
+        DenseWordVectorTable all = new DenseWordVectorTable(dimension);
+        for (int i = 0; i < 4000; i++) {
+            float[] vector = randomVector(dimension, random);
+            (i < 2000 ? first : second).put("sentence-" + i, vector);
+            all.put("sentence-" + i, vector);
+        }
+        List<float[]> queries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            queries.add(randomVector(dimension, random));
+        }
+
+        File dir = new File("target/hnsw");
+        assertTrue(dir.isDirectory() || dir.mkdirs());
+        String firstPrefix = new File(dir, "test-first").getPath();
+        HnswIndex index = new HnswIndex(dimension, 16, 100, 42);
+        HnswIndex loaded;
+        ExecutorService executor = Parse2Vec.newExecutor(3);
+        try {
+            index.addAll(first, executor, 3);
+            assertTrue(index.recall(NearestNeighbourSearch.scan(first, queries, 10), queries, 10, 100) > 0.9);
+            index.save(firstPrefix);
+            index.addAll(second, executor, 3);
+
+            // a loaded index is the saved one, and can be extended with the rows appended to its table
+            loaded = HnswIndex.load(firstPrefix, 100, 42);
+            assertEquals(first.size(), loaded.size());
+            MappedHnswIndex mappedFirst = MappedHnswIndex.open(firstPrefix);
+            for (float[] query : queries) {
+                assertEquals(mappedFirst.search(query, 10, 50).toString(), loaded.search(query, 10, 50).toString());
+            }
+            loaded.addAll(all, first.size(), executor, 3);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(4000, index.size());
+        assertEquals(4000, loaded.size());
+
+        List<List<NearestNeighbourSearch.Neighbour>> exact = NearestNeighbourSearch.scan(all, queries, 10);
+        double lowRecall = index.recall(exact, queries, 10, 10);
+        double highRecall = index.recall(exact, queries, 10, 100);
+        assertTrue("recall " + highRecall, highRecall > 0.9);
+        assertTrue(highRecall >= lowRecall);
+        double loadedRecall = loaded.recall(exact, queries, 10, 100);
+        assertTrue("recall " + loadedRecall, loadedRecall > 0.9);
+
+        String prefix = new File(dir, "test").getPath();
+        index.save(prefix);
+        MappedHnswIndex mapped = MappedHnswIndex.open(prefix);
+        assertEquals(index.size(), mapped.size());
+        assertEquals(index.m(), mapped.m());
+        for (float[] query : queries) {
+            assertEquals(index.search(query, 10, 50).toString(), mapped.search(query, 10, 50).toString());
+        }
+        assertEquals(highRecall, mapped.recall(exact, queries, 10, 100), 1e-9);
+    }
+
+    private static float[] randomVector(int dimension, Random random) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
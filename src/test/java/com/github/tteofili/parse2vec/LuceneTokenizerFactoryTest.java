@@ -0,0 +1,55 @@
+package com.github.tteofili.parse2vec;
+
+import org.deeplearning4j.text.tokenization.tokenizer.Tokenizer;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link LuceneTokenizerFactory}
+ */
+public class LuceneTokenizerFactoryTest {
+
+    @Test
+    public void testNormalizeMatchesCreate() throws Exception {
+        LuceneTokenizerFactory tokenizerFactory = new LuceneTokenizerFactory(AnalysisUtils.simpleAnalyzer(), 16);
+        List<String> words = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get("src/test/resources/test-text/sentences.txt"), StandardCharsets.UTF_8)) {
+            for (String word : line.split(" ")) {
+                words.add(word);
+            }
+        }
+        words.add("");
+        words.add(",");
+        words.add("Two Words");
+
+        ExecutorService executor = Parse2Vec.newExecutor(3);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2; i++) {
+                        for (String word : words) {
+                            Tokenizer tokenizer = tokenizerFactory.create(word);
+                            assertEquals(tokenizer.hasMoreTokens() ? tokenizer.nextToken() : word,
+                                    tokenizerFactory.normalize(word));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                ParallelParser.await(future);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.tteofili.parse2vec;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests for {@link NearestNeighbourSearch}
+ */
+public class NearestNeighbourSearchTest {
+
+    @Test
+    public void testExactSearch() throws Exception {
+        int dimension = 16;
+        Random random = new Random(42);
+        DenseWordVectorTable table = new DenseWordVectorTable(dimension);
+        for (int i = 0; i < 5000; i++) {
+            table.put("token-" + i, randomVector(dimension, random));
+        }
+        NearestNeighbourSearch search = new NearestNeighbourSearch(table);
+        List<float[]> queries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            queries.add(randomVector(dimension, random));
+        }
+
+        ExecutorService executor = Parse2Vec.newExecutor(3);
+        try {
+            List<List<NearestNeighbourSearch.Neighbour>> batch = search.search(queries, 10, executor);
+            List<List<NearestNeighbourSearch.Neighbour>> scanned = NearestNeighbourSearch.scan(table, queries, 10);
+            for (int q = 0; q < queries.size(); q++) {
+                List<String> expected = bruteForce(table, queries.get(q), 10);
+                assertEquals(expected, tokens(search.search(queries.get(q), 10)));
+                assertEquals(expected, tokens(search.search(queries.get(q), 10, executor, 3)));
+                assertEquals(expected, tokens(batch.get(q)));
+                assertEquals(batch.get(q).toString(), scanned.get(q).toString());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<NearestNeighbourSearch.Neighbour> nearest = search.nearest("token-42", 5);
+        assertEquals(5, nearest.size());
+        assertFalse(tokens(nearest).contains("token-42"));
+        assertEquals(bruteForce(table, copy(table, "token-42"), 6).subList(1, 6), tokens(nearest));
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        int dimension = 8;
+        Random random = new Random(42);
+        DenseWordVectorTable table = new DenseWordVectorTable(dimension);
+        for (int i = 0; i < 100; i++) {
+            table.put("token-" + i, randomVector(dimension, random));
+        }
+        BinaryEmbeddings.writeEmbeddingsAsBinary(table, "target/test-search");
+        NearestNeighbourSearch search = NearestNeighbourSearch.load(new File("target/test-search-vectors.bin"));
+        assertEquals(table.size(), search.size());
+        assertEquals(dimension, search.dimension());
+        float[] query = randomVector(dimension, random);
+        assertEquals(new NearestNeighbourSearch(table).search(query, 5).toString(), search.search(query, 5).toString());
+    }
+
+    private static List<String> bruteForce(DenseWordVectorTable table, float[] query, int k) {
+        return IntStream.range(0, table.size()).boxed()
+                .sorted(Comparator.comparingDouble((Integer row) -> -cosine(query, copy(table, table.token(row)))))
+                .limit(k).map(table::token).collect(Collectors.toList());
+    }
+
+    private static float[] copy(DenseWordVectorTable table, String token) {
+        float[] vector = new float[table.dimension()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = table.get(token).getAsFloat(i);
+        }
+        return vector;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private static List<String> tokens(List<NearestNeighbourSearch.Neighbour> neighbours) {
+        return neighbours.stream().map(NearestNeighbourSearch.Neighbour::getToken).collect(Collectors.toList());
+    }
+
+    private static float[] randomVector(int dimension, Random random) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.tteofili.parse2vec;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link Parse2VecMetrics}
+ */
+public class Parse2VecMetricsTest {
+
+    @Test
+    public void testSummary() throws Exception {
+        Parse2VecMetrics metrics = new Parse2VecMetrics();
+        metrics.count(Parse2VecMetrics.Counter.SENTENCES, 3);
+        metrics.count(Parse2VecMetrics.Counter.MISSING_WORD_VECTORS, 2);
+        metrics.pass(Parse2VecMetrics.Stage.PARSING, 2000000000L);
+        for (int i = 1; i <= 100; i++) {
+            metrics.parsed(i * 10000L);
+        }
+        assertEquals(3, metrics.getSentences());
+        assertEquals(2, metrics.getMissingWordVectors());
+
+        String json = metrics.toJson();
+        assertTrue(json, json.contains("\"sentences\": 3"));
+        assertTrue(json, json.contains("\"missingWordVectors\": 2"));
+        assertTrue(json, json.contains("\"parsing\": {\"wallMillis\": 2000, \"busyMillis\": 50, \"items\": 100, \"itemsPerSecond\": 50.0}"));
+        // 10us to 1ms latencies: the median (500us) falls in the 256-511us bucket
+        assertTrue(json, json.contains("\"parsing\": {\"count\": 100, \"meanMicros\": 505.0, \"p50Micros\": 512, \"p90Micros\": 1000, \"p99Micros\": 1000, \"maxMicros\": 1000}"));
+
+        metrics.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.github.tteofili.parse2vec:type=Parse2VecMetrics");
+        assertEquals(3L, server.getAttribute(name, "Sentences"));
+        server.unregisterMBean(name);
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.parser.Parse;
+import opennlp.tools.parser.Parser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link Parse2VecModel}
+ */
+public class Parse2VecModelTest {
+
+    @Test
+    public void testConcurrentEmbedding() throws Exception {
+        int layerSize = 10;
+        LuceneTokenizerFactory tokenizerFactory = new LuceneTokenizerFactory(AnalysisUtils.simpleAnalyzer());
+        MapWordVectorTable ptEmbeddings = new MapWordVectorTable(new HashMap<>());
+        MapWordVectorTable wordEmbeddings = new MapWordVectorTable(new HashMap<>());
+        Random random = new Random(42);
+        Map<String, String> trees = new HashMap<>();
+        List<String> sentences = new ArrayList<>();
+        List<float[]> expected = new ArrayList<>();
+        for (String tree : Parse2VecTest.TREES) {
+            Parse parse = Parse.parseParse(tree);
+            Parse2VecTest.addRandomVectors(parse, ptEmbeddings, wordEmbeddings, tokenizerFactory, layerSize, random);
+            String sentence = String.join(" ", Arrays.asList(parse.getCoveredText().trim().split("\\s+")));
+            trees.put(sentence, tree);
+            sentences.add(sentence);
+        }
+        for (String tree : Parse2VecTest.TREES) {
+            expected.add(Parse2VecUtils.getPTPathSentenceVector(new Parse[]{Parse.parseParse(tree)}, ptEmbeddings,
+                    wordEmbeddings, 3, Parse2Vec.Method.CLUSTER, layerSize, tokenizerFactory));
+        }
+
+        AtomicInteger createdParsers = new AtomicInteger();
+        Parse2VecModel model = new Parse2VecModel(() -> {
+            createdParsers.incrementAndGet();
+            return new FixtureParser(trees);
+        }, ptEmbeddings, wordEmbeddings, tokenizerFactory, 3, Parse2Vec.Method.CLUSTER, 4);
+        assertEquals(layerSize, model.dimension());
+        assertArrayEquals(new float[layerSize], model.embed(" "), 0f);
+
+        ExecutorService executor = Parse2Vec.newExecutor(4);
+        try {
+            List<Future<List<float[]>>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> {
+                    List<float[]> embeddings = new ArrayList<>();
+                    for (int j = 0; j < 25; j++) {
+                        for (String sentence : sentences) {
+                            embeddings.add(model.embed(sentence));
+                        }
+                    }
+                    return embeddings;
+                }));
+            }
+            for (Future<List<float[]>> future : futures) {
+                List<float[]> embeddings = future.get();
+                for (int i = 0; i < embeddings.size(); i++) {
+                    assertArrayEquals(expected.get(i % expected.size()), embeddings.get(i), 0f);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(createdParsers.get() <= 5);
+
+        List<float[]> batch = model.embedBatch(sentences);
+        for (int i = 0; i < batch.size(); i++) {
+            assertArrayEquals(expected.get(i), batch.get(i), 0f);
+        }
+    }
+
+    /**
+     * returns the fixture parse tree of each sentence
+     */
+    private static class FixtureParser implements Parser {
+
+        private final Map<String, String> trees;
+
+        FixtureParser(Map<String, String> trees) {
+            this.trees = trees;
+        }
+
+        @Override
+        public Parse[] parse(Parse tokens, int numParses) {
+            return new Parse[]{parse(tokens)};
+        }
+
+        @Override
+        public Parse parse(Parse tokens) {
+            StringBuilder sentence = new StringBuilder();
+            for (Parse token : tokens.getChildren()) {
+                sentence.append(sentence.length() > 0 ? " " : "").append(token.getCoveredText());
+            }
+            String tree = trees.get(sentence.toString());
+            if (tree == null) {
+                throw new IllegalArgumentException("no fixture for " + sentence);
+            }
+            return Parse.parseParse(tree);
+        }
+    }
+}
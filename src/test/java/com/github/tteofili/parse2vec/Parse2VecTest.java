@@ -1,15 +1,116 @@
 package com.github.tteofili.parse2vec;
 
+import opennlp.tools.parser.Parse;
+import opennlp.tools.util.wordvector.WordVector;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
 /**
  * Tests for {@link Parse2Vec}
  */
 public class Parse2VecTest {
 
+    static final String[] TREES = new String[]{
+            "(TOP (S (NP (DT The) (NN dog)) (VP (VBZ barks) (PP (IN at) (NP (DT the) (NN cat)))) (. .)))",
+            "(TOP (S (NP (PRP We)) (VP (VBP introduce) (NP (DT a) (JJ new) (NN dataset))) (. .)))",
+            "(TOP (S (NP (DT The) (NN cat)) (VP (VBZ sleeps)) (. .)))",
+            "(TOP (S (NP (DT A) (JJ new) (NN model)) (VP (VBZ learns) (NP (DT the) (NN language))) (. .)))"
+    };
+
     @Test
     public void testExecution() throws Exception {
         Parse2Vec.main(new String[]{"src/test/resources/test-text"});
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testParallelSentenceEmbeddings() throws Exception {
+        int layerSize = 10;
+        LuceneTokenizerFactory tokenizerFactory = new LuceneTokenizerFactory(AnalysisUtils.simpleAnalyzer());
+        ParseTreeStore store = new ParseTreeStore(new File("target/test-parallel-trees.bin"));
+        MapWordVectorTable ptEmbeddings = new MapWordVectorTable(new HashMap<>());
+        MapWordVectorTable wordEmbeddings = new MapWordVectorTable(new HashMap<>());
+        Random random = new Random(42);
+        String fingerprint = ParseTreeStore.fingerprint(Collections.emptyList(), new File("pom.xml"));
+        try (ParseTreeStore.Writer writer = store.writer(fingerprint)) {
+            for (int i = 0; i < 50; i++) {
+                Parse parse = Parse.parseParse(TREES[i % TREES.length]);
+                addRandomVectors(parse, ptEmbeddings, wordEmbeddings, tokenizerFactory, layerSize, random);
+                writer.add(parse.getCoveredText(), new Parse[]{parse});
+            }
+            writer.commit();
+        }
+
+        DenseWordVectorTable expected = extract(store, ptEmbeddings, wordEmbeddings, layerSize, tokenizerFactory, 1);
+        DenseWordVectorTable actual = extract(store, ptEmbeddings, wordEmbeddings, layerSize, tokenizerFactory, 4);
+        assertEquals(expected.size(), actual.size());
+        Iterator<String> tokens = expected.tokens();
+        while (tokens.hasNext()) {
+            String token = tokens.next();
+            WordVector expectedVector = expected.get(token);
+            WordVector actualVector = actual.get(token);
+            assertNotNull(actualVector);
+            for (int i = 0; i < layerSize; i++) {
+                assertEquals(expectedVector.getAsDouble(i), actualVector.getAsDouble(i), 1e-6);
+            }
+        }
+    }
+
+    private static DenseWordVectorTable extract(ParseTreeStore store, MapWordVectorTable ptEmbeddings,
+                                                MapWordVectorTable wordEmbeddings, int layerSize,
+                                                LuceneTokenizerFactory tokenizerFactory, int threads) throws Exception {
+        ExecutorService executor = Parse2Vec.newExecutor(threads);
+        try {
+            DenseWordVectorTable sentenceEmbeddings = new DenseWordVectorTable(layerSize);
+            try (EmbeddingsSink sink = new AsyncEmbeddingsSink(new EmbeddingsSink() {
+                @Override
+                public void add(String token, float[] vector) {
+                    sentenceEmbeddings.put(token, vector);
+                }
+
+                @Override
+                public void close() {
+                }
+            }, 4)) {
+                Parse2Vec.extractPTPathSentenceEmbeddings(store, ptEmbeddings, wordEmbeddings, 3,
+                        Parse2Vec.Method.CLUSTER, layerSize, tokenizerFactory, executor, sink);
+            }
+            return sentenceEmbeddings;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static void addRandomVectors(Parse parse, MapWordVectorTable ptEmbeddings, MapWordVectorTable wordEmbeddings,
+                                 LuceneTokenizerFactory tokenizerFactory, int layerSize, Random random) {
+        if (ptEmbeddings.get(parse.getType()) == null) {
+            ptEmbeddings.put(parse.getType(), randomVector(layerSize, random));
+        }
+        if (parse.getChildCount() == 0) {
+            String word = tokenizerFactory.normalize(parse.getCoveredText());
+            if (wordEmbeddings.get(word) == null) {
+                wordEmbeddings.put(word, randomVector(layerSize, random));
+            }
+        }
+        for (Parse child : parse.getChildren()) {
+            addRandomVectors(child, ptEmbeddings, wordEmbeddings, tokenizerFactory, layerSize, random);
+        }
+    }
+
+    private static FloatArrayVector randomVector(int layerSize, Random random) {
+        float[] vector = new float[layerSize];
+        for (int i = 0; i < layerSize; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return new FloatArrayVector(vector);
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.parser.Parse;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ParseTreeStore}
+ */
+public class ParseTreeStoreTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        String[] trees = new String[]{
+                "(TOP (S (NP (DT The) (NN dog)) (VP (VBZ barks) (NP (DT the) (NN cat))) (. .)))",
+                "(TOP (S (NP (PRP We)) (VP (VBP introduce) (NP (DT a) (JJ new) (NN dataset))) (. .)))"
+        };
+        ParseTreeStore store = new ParseTreeStore(new File("target/test-trees.bin"));
+        String fingerprint = ParseTreeStore.fingerprint(Collections.emptyList(), new File("pom.xml"));
+        try (ParseTreeStore.Writer writer = store.writer(fingerprint)) {
+            for (int id = 0; id < trees.length; id++) {
+                Parse parse = Parse.parseParse(trees[id]);
+                writer.add(id * 10, parse.getCoveredText(), new Parse[]{parse});
+            }
+            writer.commit();
+        }
+        assertTrue(store.isValid(fingerprint));
+        assertFalse(store.isValid("foo"));
+
+        int i = 0;
+        try (ParseTreeStore.Reader reader = store.reader()) {
+            while (reader.hasNext()) {
+                ParsedSentence parsedSentence = reader.next();
+                Parse expected = Parse.parseParse(trees[i]);
+                assertEquals(i * 10, parsedSentence.getId());
+                assertEquals(expected.getCoveredText(), parsedSentence.getSentence());
+                assertEquals(1, parsedSentence.getParses().length);
+                assertEquals(show(expected), show(parsedSentence.getParses()[0]));
+                assertEquals(expected.getTagNodes().length, parsedSentence.getParses()[0].getTagNodes().length);
+                i++;
+            }
+        }
+        assertEquals(trees.length, i);
+    }
+
+    private static String show(Parse parse) {
+        StringBuffer sb = new StringBuffer();
+        parse.show(sb);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.parser.Parse;
+import opennlp.tools.util.wordvector.WordVector;
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import opennlp.tools.util.wordvector.WordVectorTable;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link ParseTreeTraversal}
+ */
+public class ParseTreeTraversalTest {
+
+    private static final int LAYER_SIZE = 4;
+
+    @Test
+    public void testPathWordsMatchAncestorWalks() throws Exception {
+        LuceneTokenizerFactory tokenizerFactory = new LuceneTokenizerFactory(AnalysisUtils.simpleAnalyzer());
+        MapWordVectorTable ptEmbeddings = new MapWordVectorTable(new HashMap<>());
+        MapWordVectorTable wordEmbeddings = new MapWordVectorTable(new HashMap<>());
+        Random random = new Random(42);
+        for (String tree : Parse2VecTest.TREES) {
+            Parse2VecTest.addRandomVectors(Parse.parseParse(tree), ptEmbeddings, wordEmbeddings, tokenizerFactory,
+                    LAYER_SIZE, random);
+        }
+        WordVectorTable wordVectors = wordVectors(wordEmbeddings);
+
+        ParseTreeTraversal traversal = new ParseTreeTraversal(LAYER_SIZE);
+        PathWordAccumulator actual = new PathWordAccumulator(LAYER_SIZE);
+        VectorAccumulator expected = new VectorAccumulator(LAYER_SIZE);
+        for (String tree : Parse2VecTest.TREES) {
+            Parse parse = Parse.parseParse(tree);
+            traversal.accumulatePathTags(parse, wordVectors, actual, tokenizerFactory);
+            for (Parse child : parse.getChildren()) {
+                for (Parse tagNode : child.getTagNodes()) {
+                    String word = tokenizerFactory.normalize(tagNode.getCoveredText());
+                    float[] vector = toArray(wordVectors.get(word));
+                    for (Parse ancestor = tagNode.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+                        WordVector ptVector = ptEmbeddings.get(ancestor.getType());
+                        for (int i = 0; i < LAYER_SIZE; i++) {
+                            vector[i] += ptVector.getAsFloat(i);
+                        }
+                    }
+                    expected.add(word, vector);
+                }
+            }
+        }
+
+        assertEquals(expected.size(), actual.size());
+        DenseWordVectorTable expectedMeans = expected.means();
+        DenseWordVectorTable actualMeans = actual.means(ptEmbeddings);
+        Iterator<String> tokens = expected.tokens();
+        while (tokens.hasNext()) {
+            String token = tokens.next();
+            assertArrayEquals(toArray(expectedMeans.get(token)), toArray(actualMeans.get(token)), 1e-5f);
+        }
+    }
+
+    @Test
+    public void testTagsAverageChildren() throws Exception {
+        MapWordVectorTable wordEmbeddings = new MapWordVectorTable(new HashMap<>());
+        wordEmbeddings.put("the", new FloatArrayVector(new float[]{1f, 0f, 0f, 0f}));
+        wordEmbeddings.put("dog", new FloatArrayVector(new float[]{0f, 1f, 0f, 0f}));
+        wordEmbeddings.put("barks", new FloatArrayVector(new float[]{0f, 0f, 1f, 0f}));
+        LuceneTokenizerFactory tokenizerFactory = new LuceneTokenizerFactory(AnalysisUtils.simpleAnalyzer());
+
+        VectorAccumulator ptEmbeddings = new VectorAccumulator(LAYER_SIZE);
+        new ParseTreeTraversal(LAYER_SIZE).accumulateTags(
+                Parse.parseParse("(TOP (S (NP (DT The) (NN dog)) (VP (VBZ barks))))"), wordVectors(wordEmbeddings),
+                ptEmbeddings, tokenizerFactory);
+
+        DenseWordVectorTable means = ptEmbeddings.means();
+        assertArrayEquals(new float[]{0.5f, 0.5f, 0f, 0f}, toArray(means.get("NP")), 1e-6f);
+        assertArrayEquals(new float[]{0f, 0f, 1f, 0f}, toArray(means.get("VP")), 1e-6f);
+        assertArrayEquals(new float[]{0.25f, 0.25f, 0.5f, 0f}, toArray(means.get("S")), 1e-6f);
+        assertEquals(3, ptEmbeddings.count("TK"));
+    }
+
+    /**
+     * the given vectors as a Word2Vec model, like the trained one
+     */
+    private static WordVectorTable wordVectors(MapWordVectorTable wordEmbeddings) throws Exception {
+        StringBuilder text = new StringBuilder();
+        Iterator<String> tokens = wordEmbeddings.tokens();
+        while (tokens.hasNext()) {
+            String token = tokens.next();
+            text.append(token);
+            for (float v : toArray(wordEmbeddings.get(token))) {
+                text.append(' ').append(v);
+            }
+            text.append('\n');
+        }
+        return new Word2VecWordVectorTable(WordVectorSerializer.loadTxtVectors(
+                new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8)), false));
+    }
+
+    private static float[] toArray(WordVector wordVector) {
+        float[] array = new float[wordVector.dimension()];
+        wordVector.toFloatBuffer().get(array);
+        return array;
+    }
+}
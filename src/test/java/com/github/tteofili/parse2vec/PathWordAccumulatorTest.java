@@ -0,0 +1,70 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.parser.Parse;
+import opennlp.tools.util.wordvector.WordVector;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link PathWordAccumulator}
+ */
+public class PathWordAccumulatorTest {
+
+    private static final int LAYER_SIZE = 4;
+
+    @Test
+    public void testMergedShardsMatchPathWords() throws Exception {
+        LuceneTokenizerFactory tokenizerFactory = new LuceneTokenizerFactory(AnalysisUtils.simpleAnalyzer());
+        MapWordVectorTable ptEmbeddings = new MapWordVectorTable(new HashMap<>());
+        MapWordVectorTable wordEmbeddings = new MapWordVectorTable(new HashMap<>());
+        Random random = new Random(42);
+        for (String tree : Parse2VecTest.TREES) {
+            Parse2VecTest.addRandomVectors(Parse.parseParse(tree), ptEmbeddings, wordEmbeddings, tokenizerFactory,
+                    LAYER_SIZE, random);
+        }
+
+        // the trees are split in two shards, the path words of the whole corpus are the reference
+        ParseTreeTraversal traversal = new ParseTreeTraversal(LAYER_SIZE);
+        PathWordAccumulator expected = new PathWordAccumulator(LAYER_SIZE);
+        PathWordAccumulator first = new PathWordAccumulator(LAYER_SIZE);
+        PathWordAccumulator second = new PathWordAccumulator(LAYER_SIZE);
+        for (int i = 0; i < Parse2VecTest.TREES.length; i++) {
+            Parse parse = Parse.parseParse(Parse2VecTest.TREES[i]);
+            traversal.accumulatePathTags(parse, wordEmbeddings, expected, tokenizerFactory);
+            traversal.accumulatePathTags(parse, wordEmbeddings, i % 2 == 0 ? first : second, tokenizerFactory);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            second.write(out);
+        }
+        PathWordAccumulator merged = new PathWordAccumulator(LAYER_SIZE);
+        merged.merge(first);
+        merged.merge(PathWordAccumulator.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+
+        DenseWordVectorTable expectedMeans = expected.means(ptEmbeddings);
+        DenseWordVectorTable actualMeans = merged.means(ptEmbeddings);
+        assertEquals(expectedMeans.size(), actualMeans.size());
+        Iterator<String> tokens = expectedMeans.tokens();
+        while (tokens.hasNext()) {
+            String token = tokens.next();
+            assertArrayEquals(token, toArray(expectedMeans.get(token)), toArray(actualMeans.get(token)), 1e-4f);
+        }
+    }
+
+    private static float[] toArray(WordVector wordVector) {
+        float[] array = new float[wordVector.dimension()];
+        wordVector.toFloatBuffer().get(array);
+        return array;
+    }
+}
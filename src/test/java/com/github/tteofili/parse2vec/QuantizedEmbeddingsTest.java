@@ -0,0 +1,89 @@
+package com.github.tteofili.parse2vec;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ScalarQuantizedEmbeddings} and {@link ProductQuantizedEmbeddings}
+ */
+public class QuantizedEmbeddingsTest {
+
+    @Test
+    public void testQuantization() throws Exception {
+        int dimension = 16;
+        Random random = new Random(42);
+        // rows around a few centers, as the embeddings of similar words or sentences are
+        float[][] centers = new float[20][dimension];
+        for (float[] center : centers) {
+            for (int i = 0; i < dimension; i++) {
+                center[i] = (float) random.nextGaussian();
+            }
+        }
+        DenseWordVectorTable table = new DenseWordVectorTable(dimension);
+        for (int row = 0; row < 3000; row++) {
+            float[] center = centers[random.nextInt(centers.length)];
+            float[] vector = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = center[i] + (float) random.nextGaussian();
+            }
+            table.put("row " + row, vector);
+        }
+        List<float[]> queries = new ArrayList<>();
+        for (int q = 0; q < 50; q++) {
+            float[] query = new float[dimension];
+            table.get("row " + random.nextInt(table.size())).toFloatBuffer().get(query);
+            queries.add(query);
+        }
+        List<List<NearestNeighbourSearch.Neighbour>> exact = NearestNeighbourSearch.scan(table, queries, 10);
+
+        ScalarQuantizedEmbeddings int8 = ScalarQuantizedEmbeddings.quantize(table);
+        assertEquals(table.size(), int8.size());
+        assertTrue(int8.codeBytes() < table.size() * dimension * 4 / 3.9);
+        assertTrue(int8.reconstructionError(table) < 1e-4);
+        assertTrue(int8.recall(exact, queries, 10) > 0.9);
+
+        ExecutorService executor = Parse2Vec.newExecutor(2);
+        ProductQuantizedEmbeddings pq;
+        try {
+            pq = ProductQuantizedEmbeddings.quantize(table, 4, 10, 1000, 42, executor, 2);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(table.size(), pq.size());
+        // 4 bytes per row instead of 64, plus the codebooks
+        assertTrue(pq.codeBytes() < table.size() * dimension * 4 / 5);
+        assertTrue(pq.reconstructionError(table) < 0.15);
+        assertTrue(pq.recall(exact, queries, 10) > 0.4);
+
+        // the codes are written and read back as they are
+        for (QuantizedEmbeddings quantized : new QuantizedEmbeddings[]{int8, pq}) {
+            File file = new File("target/test-quantized-" + quantized.getClass().getSimpleName() + ".bin");
+            quantized.write(file);
+            QuantizedEmbeddings read = QuantizedEmbeddings.read(file);
+            assertEquals(quantized.getClass(), read.getClass());
+            assertEquals(quantized.codeBytes(), read.codeBytes());
+            for (float[] query : queries) {
+                assertEquals(quantized.search(query, 10).toString(), read.search(query, 10).toString());
+            }
+        }
+
+        // scoring a row against the query gives the dot product with the decoded row
+        float[] decoded = new float[dimension];
+        float[] query = queries.get(0).clone();
+        VectorMath.normalize(query);
+        for (QuantizedEmbeddings quantized : new QuantizedEmbeddings[]{int8, pq}) {
+            NearestNeighbourSearch.Neighbour best = quantized.search(query, 1).get(0);
+            int row = Integer.parseInt(best.getToken().substring(4));
+            quantized.decode(row, decoded);
+            assertEquals(VectorMath.dot(query, 0, decoded, 0, dimension), best.getScore(), 1e-4);
+        }
+    }
+}
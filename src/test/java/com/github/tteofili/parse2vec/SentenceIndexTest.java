@@ -0,0 +1,66 @@
+package com.github.tteofili.parse2vec;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link SentenceIndex}
+ */
+public class SentenceIndexTest {
+
+    @Test
+    public void testKeywordSearchReRankedByVectors() throws Exception {
+        String[] sentences = new String[]{"The dog barks at the cat.", "The cat sleeps.", "A new model learns the language.",
+                "The cat's dog barks."};
+        float[][] vectors = new float[][]{{1, 0, 0}, {0, 2, 0}, {0, 0, 1}, {1, 1, 0}};
+        Files.deleteIfExists(Paths.get("target/test-index-sentences.tsv"));
+        Files.deleteIfExists(Paths.get("target/test-index-sentences.idx"));
+        SentenceMetadata metadata = new SentenceMetadata("target/test-index-sentences");
+        try (SentenceMetadata.Writer writer = metadata.writer(0)) {
+            for (String sentence : sentences) {
+                writer.add("a.txt", writer.count() + 1, sentence, SentenceHash.of(sentence));
+            }
+        }
+        try (EmbeddingsSink sink = new SentenceIndex.Writer(Paths.get("target/test-index"), metadata, false)) {
+            for (int id = 0; id < sentences.length; id++) {
+                sink.add(Integer.toString(id), vectors[id]);
+            }
+        }
+        // appending replaces the sentences which are already indexed
+        try (EmbeddingsSink sink = new SentenceIndex.Writer(Paths.get("target/test-index"), metadata, true)) {
+            sink.add("1", vectors[1]);
+        }
+
+        try (SentenceIndex index = SentenceIndex.open(Paths.get("target/test-index"))) {
+            assertEquals(sentences.length, index.size());
+
+            // only the sentences about cats are hits, ranked by their similarity to the query
+            List<SentenceIndex.Hit> hits = index.search("cats", new float[]{0, 1, 0}, 10, 10);
+            assertEquals(0, hits.size());
+            hits = index.search("Cat", new float[]{0, 1, 0}, 10, 10);
+            assertEquals(3, hits.size());
+            assertEquals(1, hits.get(0).getId());
+            assertEquals("The cat sleeps.", hits.get(0).getText());
+            assertEquals("a.txt", hits.get(0).getSource());
+            assertEquals(2, hits.get(0).getLine());
+            assertEquals(1f, hits.get(0).getSimilarity(), 1e-6);
+            assertEquals(3, hits.get(1).getId());
+            assertEquals(Math.sqrt(0.5), hits.get(1).getSimilarity(), 1e-6);
+            assertEquals(0, hits.get(2).getId());
+            assertEquals(0f, hits.get(2).getSimilarity(), 1e-6);
+            assertTrue(hits.get(0).getScore() > 0);
+
+            // the best k of the re-ranked lexical hits
+            hits = index.search("dog language", new float[]{0, 0, 1}, 10, 1);
+            assertEquals(1, hits.size());
+            assertEquals(2, hits.get(0).getId());
+            assertEquals(0, index.search("...", new float[]{0, 0, 1}, 10, 10).size());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.tteofili.parse2vec;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link SentenceMetadata}
+ */
+public class SentenceMetadataTest {
+
+    @Test
+    public void testWriteAppendAndGet() throws Exception {
+        Files.deleteIfExists(Paths.get("target/test-sentences.tsv"));
+        Files.deleteIfExists(Paths.get("target/test-sentences.idx"));
+        SentenceMetadata metadata = new SentenceMetadata("target/test-sentences");
+        assertFalse(metadata.exists());
+        try (SentenceMetadata.Writer writer = metadata.writer(0)) {
+            assertEquals(0, writer.add("a.txt", 1, "The dog barks.", SentenceHash.of("The dog barks.")));
+            assertEquals(1, writer.add("a.txt", 3, "A\ttabbed è sentence.", SentenceHash.of("A\ttabbed è sentence.")));
+            assertEquals(2, writer.add("a.txt", 4, "Discarded.", SentenceHash.of("Discarded.")));
+        }
+        assertEquals(3, metadata.size());
+
+        // a writer starting from an id discards the following sentences
+        try (SentenceMetadata.Writer writer = metadata.writer(2)) {
+            assertEquals(2, writer.add("b.txt", 7, "The cat sleeps.", SentenceHash.of("The cat sleeps.")));
+            assertEquals(3, writer.count());
+        }
+        assertEquals(3, metadata.size());
+
+        SentenceMetadata.Sentence sentence = metadata.get(1);
+        assertEquals("a.txt", sentence.getSource());
+        assertEquals(3, sentence.getLine());
+        assertEquals("A\ttabbed è sentence.", sentence.getText());
+        sentence = metadata.get(2);
+        assertEquals("b.txt", sentence.getSource());
+        assertEquals(7, sentence.getLine());
+        assertEquals("The cat sleeps.", sentence.getText());
+        assertEquals("The dog barks.", metadata.get(0).getText());
+        assertNull(metadata.get(3));
+
+        // sequential lookups, skipping sentences, read the same sentences
+        try (SentenceMetadata.Reader reader = metadata.reader()) {
+            assertEquals(metadata.get(0).toString(), reader.get(0).toString());
+            assertEquals(metadata.get(2).toString(), reader.get(2).toString());
+            assertNull(reader.get(3));
+        }
+        try (SentenceMetadata.Reader reader = metadata.reader()) {
+            assertEquals(metadata.get(1).toString(), reader.get(1).toString());
+            try {
+                reader.get(0);
+                fail("sentences looked up out of order");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+
+        Set<SentenceHash> hashes = metadata.hashes(2);
+        assertEquals(2, hashes.size());
+        assertTrue(hashes.contains(SentenceHash.of("The dog barks.")));
+        assertFalse(hashes.contains(SentenceHash.of("The cat sleeps.")));
+        assertEquals(3, metadata.hashes(3).size());
+    }
+
+    @Test
+    public void testHash() {
+        assertEquals(SentenceHash.of("The dog barks."), SentenceHash.of("The dog barks."));
+        assertFalse(SentenceHash.of("The dog barks.").equals(SentenceHash.of("The dog barks")));
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", SentenceHash.of("").toString());
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVector;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link TrainingCheckpoint}
+ */
+public class TrainingCheckpointTest {
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        File processed = new File("target/test-checkpoint-processed.txt");
+        Files.write(processed.toPath(), "a sentence".getBytes(StandardCharsets.UTF_8));
+        VectorAccumulator tags = new VectorAccumulator(2);
+        tags.add("NP", new float[]{1f, 2f});
+        tags.add("NP", new float[]{3f, 4f});
+        tags.add("VP", new float[]{1f, 1f});
+        PathWordAccumulator words = new PathWordAccumulator(2);
+        words.add("dog", new float[]{2f, 0f}, Arrays.asList("TOP", "NP"));
+
+        File file = new File("target/test-checkpoint.bin");
+        new TrainingCheckpoint(2, TrainingCheckpoint.fileStates(Collections.singletonList(processed)), 3, tags, words)
+                .write(file);
+        assertFalse(new File("target/test-checkpoint.bin.tmp").exists());
+
+        TrainingCheckpoint checkpoint = TrainingCheckpoint.read(file);
+        assertEquals(2, checkpoint.getLayerSize());
+        assertEquals(3, checkpoint.getSentences());
+        Map<String, Long> files = checkpoint.getFiles();
+        assertEquals(processed.lastModified(), (long) files.get(processed.getAbsolutePath()));
+        assertEquals(2, checkpoint.getPTTags().count("NP"));
+        assertEquals(1, checkpoint.getPTTags().count("VP"));
+        assertEquals(1, checkpoint.getPathWords().size());
+
+        // accumulated sums are restored, so merging new observations gives the means over all of them
+        VectorAccumulator more = new VectorAccumulator(2);
+        more.add("NP", new float[]{5f, 6f});
+        checkpoint.getPTTags().merge(more);
+        WordVector np = checkpoint.getPTTags().means().get("NP");
+        assertEquals(3f, np.getAsFloat(0), 1e-6);
+        assertEquals(4f, np.getAsFloat(1), 1e-6);
+
+        // words are enriched with the given parse tree embeddings, tags without an embedding are skipped
+        DenseWordVectorTable ptEmbeddings = new DenseWordVectorTable(2);
+        ptEmbeddings.put("NP", new float[]{1f, 1f});
+        WordVector dog = checkpoint.getPathWords().means(ptEmbeddings).get("dog");
+        assertEquals(3f, dog.getAsFloat(0), 1e-6);
+        assertEquals(1f, dog.getAsFloat(1), 1e-6);
+
+        File added = new File("target/test-checkpoint-added.txt");
+        Files.write(added.toPath(), "another sentence".getBytes(StandardCharsets.UTF_8));
+        List<File> newFiles = checkpoint.newFiles(Arrays.asList(processed, added));
+        assertEquals(Collections.singletonList(added), newFiles);
+    }
+
+    @Test
+    public void testMissingCheckpoint() throws Exception {
+        assertNull(TrainingCheckpoint.read(new File("target/test-missing-checkpoint.bin")));
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.tteofili.parse2vec;
+
+import org.junit.Test;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link TruncatedSVD}
+ */
+public class TruncatedSVDTest {
+
+    @Test
+    public void testMatchesFullSVD() {
+        Random random = new Random(42);
+        int[][] shapes = new int[][]{{2, 100}, {3, 100}, {4, 100}, {7, 100}, {12, 50}, {5, 3}, {20, 10}};
+        for (int[] shape : shapes) {
+            for (int k = 1; k <= 3 && k <= Math.min(shape[0], shape[1]); k++) {
+                float[][] matrix = new float[shape[0]][shape[1]];
+                for (float[] row : matrix) {
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] = (float) random.nextGaussian();
+                    }
+                }
+                assertMatches(matrix, k);
+            }
+        }
+    }
+
+    @Test
+    public void testRankDeficient() {
+        float[][] matrix = new float[][]{{1, 2, 3, 4}, {2, 4, 6, 8}, {-1, -2, -3, -4}};
+        assertMatches(matrix, 1);
+        float[][] vt = TruncatedSVD.getTruncatedVT(matrix, 2);
+        assertEquals(2, vt.length);
+        assertEquals(1, dot(vt[1], vt[1]), 1e-5);
+        assertEquals(0, dot(vt[0], vt[1]), 1e-5);
+    }
+
+    @Test
+    public void testDeterministicSign() {
+        float[][] matrix = new float[][]{{1, -5, 0}, {0, -4, 1}};
+        float[] v = TruncatedSVD.getTruncatedVT(matrix, 1)[0];
+        float[][] negated = new float[][]{{-1, 5, 0}, {0, 4, -1}};
+        float[] w = TruncatedSVD.getTruncatedVT(negated, 1)[0];
+        for (int i = 0; i < v.length; i++) {
+            assertEquals(v[i], w[i], 1e-6);
+        }
+        assertEquals(true, v[1] > 0);
+    }
+
+    private static void assertMatches(float[][] matrix, int k) {
+        double[][] data = new double[matrix.length][matrix[0].length];
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[i].length; j++) {
+                data[i][j] = matrix[i][j];
+            }
+        }
+        double[][] expected = EmbeddingsUtils.getTruncatedVT(Nd4j.create(data), k);
+        float[][] actual = TruncatedSVD.getTruncatedVT(matrix, k);
+        assertEquals(k, actual.length);
+        for (int s = 0; s < k; s++) {
+            // singular vectors are only defined up to their sign
+            double cosine = 0;
+            for (int j = 0; j < expected[s].length; j++) {
+                cosine += expected[s][j] * actual[s][j];
+            }
+            assertEquals(1d, Math.abs(cosine), 1e-4);
+        }
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.tteofili.parse2vec;
+
+import opennlp.tools.util.wordvector.WordVector;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link VectorAccumulator}
+ */
+public class VectorAccumulatorTest {
+
+    @Test
+    public void testMergedMeans() {
+        VectorAccumulator first = new VectorAccumulator(2);
+        first.add("foo", new float[]{1f, 2f});
+        first.add("foo", new float[]{3f, 4f});
+        first.add("bar", new float[]{1f, 1f});
+
+        VectorAccumulator second = new VectorAccumulator(2);
+        second.add("foo", new float[]{5f, 6f});
+
+        VectorAccumulator merged = new VectorAccumulator(2);
+        merged.merge(first);
+        merged.merge(second);
+
+        assertEquals(3, merged.count("foo"));
+        assertEquals(1, merged.count("bar"));
+        DenseWordVectorTable means = merged.means();
+        WordVector foo = means.get("foo");
+        assertEquals(3f, foo.getAsFloat(0), 1e-6);
+        assertEquals(4f, foo.getAsFloat(1), 1e-6);
+        WordVector bar = means.get("bar");
+        assertEquals(1f, bar.getAsFloat(0), 1e-6);
+        assertEquals(1f, bar.getAsFloat(1), 1e-6);
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.tteofili.parse2vec;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link VectorMath}
+ */
+public class VectorMathTest {
+
+    @Test
+    public void testMatrixRows() {
+        float[] matrix = {1f, 2f, 3f, 4f, 5f, 6f};
+        float[] vector = {10f, 20f, 30f};
+        VectorMath.add(matrix, 3, vector, 0, 3);
+        assertArrayEquals(new float[]{1f, 2f, 3f, 14f, 25f, 36f}, matrix, 0f);
+        VectorMath.divide(matrix, 3, 3, 2);
+        assertArrayEquals(new float[]{1f, 2f, 3f, 7f, 12.5f, 18f}, matrix, 0f);
+        VectorMath.add(vector, new float[]{1f, 1f, 1f});
+        assertArrayEquals(new float[]{11f, 21f, 31f}, vector, 0f);
+    }
+
+    @Test
+    public void testDot() {
+        Random random = new Random(42);
+        for (int length = 0; length < 20; length++) {
+            float[] x = new float[length + 2];
+            float[] y = new float[length + 1];
+            double expected = 0;
+            for (int i = 0; i < length; i++) {
+                x[i + 2] = (float) random.nextGaussian();
+                y[i + 1] = (float) random.nextGaussian();
+                expected += (double) x[i + 2] * y[i + 1];
+            }
+            float dot = VectorMath.dot(x, 2, y, 1, length);
+            assertEquals(expected, dot, 1e-5);
+            // mapped vectors must score exactly like in memory ones
+            assertEquals(dot, VectorMath.dot(Arrays.copyOfRange(x, 2, x.length), FloatBuffer.wrap(y), 1, length), 0f);
+        }
+    }
+
+    @Test
+    public void testNormalize() {
+        float[] matrix = {3f, 4f, 0f, 0f};
+        VectorMath.normalize(matrix, 0, 2);
+        VectorMath.normalize(matrix, 2, 2);
+        assertArrayEquals(new float[]{0.6f, 0.8f, 0f, 0f}, matrix, 1e-7f);
+        assertEquals(1, VectorMath.norm(matrix, 0, 2), 1e-7);
+        assertEquals(0, VectorMath.norm(matrix, 2, 2), 0);
+    }
+}